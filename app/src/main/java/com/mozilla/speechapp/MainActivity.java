@@ -26,6 +26,7 @@ import com.mozilla.speechlibrary.utils.download.DownloadJob;
 import com.mozilla.speechlibrary.utils.download.DownloadsManager;
 import com.mozilla.speechlibrary.utils.zip.UnzipCallback;
 import com.mozilla.speechlibrary.utils.zip.UnzipTask;
+import com.mozilla.speechlibrary.MicLevelPublisher;
 import com.mozilla.speechlibrary.stt.STTResult;
 import com.mozilla.speechlibrary.SpeechResultCallback;
 import com.mozilla.speechlibrary.SpeechService;
@@ -130,7 +131,9 @@ public class MainActivity extends AppCompatActivity implements
                     .withStoreSamples(mStoreSamplesSwitch.isChecked())
                     .withStoreTranscriptions(mTranscriptionsSwitch.isChecked())
                     .withProductTag(txtProductTag.getText().toString())
-                    .withUseDeepSpeech(mDeepSpeechSwitch.isChecked());
+                    .withUseDeepSpeech(mDeepSpeechSwitch.isChecked())
+                    .withMicActivityRate(30)
+                    .withMicActivityAggregation(MicLevelPublisher.Aggregation.MAX);
             if (mDeepSpeechSwitch.isChecked()) {
                 String language = mTxtLanguage.getText().toString();
                 String modelPath = ModelUtils.modelPath(this, language);
@@ -0,0 +1,137 @@
+package com.github.axet.audiolibrary.encoders;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * {@link FormatOPUS#encode} at 16 kHz mono, one read per iteration. {@code encode} runs the
+ * Opus codec, {@code framing} replaces it with a fixed packet to time only the framing of the
+ * reads around it. A 20 ms read is one whole frame, a 512 sample read goes through the partial
+ * frame carried to the next read.
+ */
+@RunWith(Parameterized.class)
+public class FormatOPUSBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public int read;
+
+    @Parameterized.Parameters(name = "read{0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{SAMPLE_RATE / 50}, {512}});
+    }
+
+    /**
+     * Hands frames to a fixed packet instead of the codec.
+     */
+    static class Framing extends FormatOPUS {
+        static final byte[] PACKET = new byte[40];
+
+        long bytes;
+
+        Framing(Context context, EncoderInfo info) {
+            super(context, info, null);
+        }
+
+        @Override
+        public void create(EncoderInfo info, ByteArrayOutputStream out) {
+            init(info);
+        }
+
+        @Override
+        byte[] encodeOpus(short[] buf, int pos, int len) {
+            return PACKET;
+        }
+
+        @Override
+        void encode(byte[] packet, long dur) {
+            bytes += packet.length;
+        }
+    }
+
+    static class Packets extends FormatOPUS {
+        long bytes;
+
+        Packets(Context context, EncoderInfo info) {
+            super(context, info, null);
+        }
+
+        @Override
+        void encode(byte[] packet, long dur) {
+            bytes += packet.length;
+        }
+    }
+
+    private short[] pcm;
+
+    @Before
+    public void setUp() {
+        // Speech-like harmonics over noise, so the codec doesn't get an easy signal
+        Random random = new Random(1);
+        pcm = new short[SAMPLE_RATE];
+        double phase = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            phase += 2 * Math.PI * 140 / SAMPLE_RATE;
+            double v = random.nextGaussian() * 300;
+            for (int h = 1; h <= 12; h++) {
+                v += 3000.0 / h * Math.sin(h * phase);
+            }
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v)));
+        }
+    }
+
+    private void run(FormatOPUS encoder) {
+        int pos = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            if (pos + read > pcm.length) {
+                pos = 0;
+            }
+            encoder.encode(pcm, pos, read);
+            pos += read;
+        }
+    }
+
+    @Test
+    public void encode() {
+        Context context = InstrumentationRegistry.getInstrumentation().getContext();
+        Packets encoder = new Packets(context, new EncoderInfo(1, SAMPLE_RATE, 16));
+
+        run(encoder);
+
+        encoder.close();
+        if (encoder.bytes == 0) {
+            throw new AssertionError("no packets");
+        }
+    }
+
+    @Test
+    public void framing() {
+        Context context = InstrumentationRegistry.getInstrumentation().getContext();
+        Framing encoder = new Framing(context, new EncoderInfo(1, SAMPLE_RATE, 16));
+
+        run(encoder);
+
+        if (encoder.bytes == 0) {
+            throw new AssertionError("no packets");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.axet.audiolibrary.encoders;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link StreamResampler} at every quality against the SSRC based {@link Resample} it replaces,
+ * for the conversions {@link FormatOPUS} makes. {@code second} is the time to resample one second
+ * of audio written in 20 ms blocks, including the tail. {@code firstOutput} is the time from the
+ * first block written to the first samples out of a fresh resampler.
+ */
+@RunWith(Parameterized.class)
+public class ResamplerBenchmark {
+
+    private static final int SSRC = -1;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public String name;
+
+    @Parameterized.Parameter(1)
+    public int sampleRate;
+
+    @Parameterized.Parameter(2)
+    public int hz;
+
+    // A StreamResampler.Quality ordinal or SSRC
+    @Parameterized.Parameter(3)
+    public int quality;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int[] rates : new int[][]{{32000, 24000}, {44100, 48000}}) {
+            String conversion = rates[0] + "to" + rates[1] + "_";
+            parameters.add(new Object[]{conversion + "SSRC", rates[0], rates[1], SSRC});
+            for (StreamResampler.Quality quality : StreamResampler.Quality.values()) {
+                parameters.add(new Object[]{conversion + quality.name(), rates[0], rates[1], quality.ordinal()});
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * The two resamplers behind one interface, each {@link #write} returns the output it made
+     * available.
+     */
+    private interface Converter {
+        int write(short[] buf, int pos, int len);
+
+        int end() throws InterruptedException;
+
+        void close();
+    }
+
+    private static class Stream implements Converter {
+        final StreamResampler resampler;
+        final short[] out;
+
+        Stream(int sampleRate, int hz, StreamResampler.Quality quality, int block) {
+            resampler = new StreamResampler(sampleRate, 1, hz, quality);
+            out = new short[Math.max(resampler.getOutputSize(block), resampler.getFlushSize())];
+        }
+
+        @Override
+        public int write(short[] buf, int pos, int len) {
+            return resampler.process(buf, pos, len, out, 0);
+        }
+
+        @Override
+        public int end() {
+            return resampler.flush(out, 0);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class Ssrc implements Converter {
+        final Resample resample;
+
+        Ssrc(int sampleRate, int hz) {
+            resample = new Resample(sampleRate, 1, hz);
+        }
+
+        @Override
+        public int write(short[] buf, int pos, int len) {
+            resample.write(buf, pos, len);
+            return drain();
+        }
+
+        // Resample.end() closes the side we read from and drops the tail, close the side we
+        // write to instead and wait for SSRC to write the tail
+        @Override
+        public int end() throws InterruptedException {
+            try {
+                resample.os.close();
+
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            resample.thread.join();
+            resample.thread = null;
+            return drain();
+        }
+
+        int drain() {
+            int n = 0;
+            ByteBuffer bb;
+            while ((bb = resample.read()) != null) {
+                n += bb.position() / Resample.SHORT_BYTES;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            resample.close();
+        }
+    }
+
+    private static short[] noise(int frames) {
+        Random random = new Random(1);
+        short[] pcm = new short[frames];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (random.nextGaussian() * 3000);
+        }
+        return pcm;
+    }
+
+    private Converter create(int block) {
+        if (quality == SSRC) {
+            return new Ssrc(sampleRate, hz);
+        }
+        return new Stream(sampleRate, hz, StreamResampler.Quality.values()[quality], block);
+    }
+
+    @Test
+    public void second() throws Exception {
+        int block = sampleRate / 50;
+        short[] pcm = noise(sampleRate);
+        long produced = 0;
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            Converter converter = create(block);
+            state.resumeTiming();
+
+            for (int pos = 0; pos + block <= pcm.length; pos += block) {
+                produced += converter.write(pcm, pos, block);
+            }
+            produced += converter.end();
+
+            state.pauseTiming();
+            converter.close();
+            state.resumeTiming();
+        }
+        // Keeps the output alive, and catches a resampler that lost it
+        if (produced == 0) {
+            throw new AssertionError(name + " produced nothing");
+        }
+    }
+
+    @Test
+    public void firstOutput() throws Exception {
+        int block = sampleRate / 50;
+        short[] pcm = noise(sampleRate);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            Converter converter = create(block);
+            state.resumeTiming();
+
+            int produced = 0;
+            for (int pos = 0; produced == 0 && pos + block <= pcm.length; pos += block) {
+                produced = converter.write(pcm, pos, block);
+            }
+            // SSRC works on its own thread, the output may come after the last block
+            while (produced == 0 && converter instanceof Ssrc) {
+                produced = ((Ssrc) converter).drain();
+            }
+
+            state.pauseTiming();
+            converter.close();
+            state.resumeTiming();
+        }
+    }
+}
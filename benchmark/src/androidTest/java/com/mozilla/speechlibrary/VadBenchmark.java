@@ -0,0 +1,168 @@
+package com.mozilla.speechlibrary;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * The ways to feed the VAD 20 ms frames at 16 kHz, one frame per iteration unless noted:
+ * <ul>
+ * <li>{@code array} a whole short[] frame, the only entry point before frames were pinned.</li>
+ * <li>{@code arrayOffset} a frame in the middle of a larger block.</li>
+ * <li>{@code shortBuffer} and {@code byteBuffer} a frame in a direct buffer.</li>
+ * <li>{@code scored} a frame, also reading back the scores.</li>
+ * <li>{@code frames} one second, 50 frames, in a single call.</li>
+ * <li>{@code rejected} a 1 sample frame the detector turns down right away, which leaves the
+ * cost of the call itself.</li>
+ * </ul>
+ * Every case runs on the native detector and on its Java port.
+ */
+@RunWith(Parameterized.class)
+public class VadBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 50;
+    private static final int FRAMES = 50;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public Vad.Implementation mImplementation;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{Vad.Implementation.NATIVE}, {Vad.Implementation.JAVA}});
+    }
+
+    private Vad mVad;
+    private short[] mPcm;
+    private short[][] mFrames;
+
+    @Before
+    public void setUp() {
+        // Half a second of a voiced harmonic signal, then half a second of quiet noise
+        Random random = new Random(1);
+        mPcm = new short[FRAMES * FRAME];
+        double phase = 0;
+        for (int i = 0; i < mPcm.length; i++) {
+            double v = random.nextGaussian() * 30;
+            if (i < mPcm.length / 2) {
+                phase += 2 * Math.PI * 140 / SAMPLE_RATE;
+                for (int h = 1; h <= 12; h++) {
+                    v += 3000.0 / h * Math.sin(h * phase);
+                }
+            }
+            mPcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v)));
+        }
+
+        mFrames = new short[FRAMES][FRAME];
+        for (int i = 0; i < FRAMES; i++) {
+            System.arraycopy(mPcm, i * FRAME, mFrames[i], 0, FRAME);
+        }
+
+        mVad = new Vad(SAMPLE_RATE, Vad.Mode.VERY_AGGRESSIVE, mImplementation);
+        if (mVad.start() < 0) {
+            throw new IllegalStateException("VAD didn't start");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mVad.close();
+    }
+
+    @Test
+    public void array() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mVad.feed(mFrames[i], FRAME);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void arrayOffset() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mVad.feed(mPcm, i * FRAME, FRAME);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void shortBuffer() {
+        ShortBuffer buffer = ByteBuffer.allocateDirect(mPcm.length * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        buffer.put(mPcm);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            buffer.position(i * FRAME);
+            mVad.feed(buffer, FRAME);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void byteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(mPcm.length * 2)
+                .order(ByteOrder.nativeOrder());
+        buffer.asShortBuffer().put(mPcm);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            buffer.position(i * FRAME * 2);
+            mVad.feed(buffer, FRAME);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void scored() {
+        VadScores scores = new VadScores();
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mVad.feed(mPcm, i * FRAME, FRAME, scores);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void frames() {
+        byte[] decisions = new byte[FRAMES];
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mVad.feedFrames(mPcm, 0, mPcm.length, FRAME, decisions);
+        }
+    }
+
+    @Test
+    public void rejected() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mVad.feed(mFrames[0], 1);
+        }
+    }
+}
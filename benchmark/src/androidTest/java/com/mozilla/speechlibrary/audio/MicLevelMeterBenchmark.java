@@ -0,0 +1,137 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * One 20 ms frame at 16 kHz per iteration through every {@link MicLevelMeter.Mode}, and
+ * through the commons-math FFT and per bin sum the level was computed with before, which
+ * {@link MicLevelMeter.Mode#SPECTRUM} replaces.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MicLevelMeterBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 50;
+    private static final int FRAMES = 50;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private short[][] mFrames;
+    private double mSink;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        mFrames = new short[FRAMES][FRAME];
+        double phase = 0;
+        for (short[] frame : mFrames) {
+            for (int i = 0; i < FRAME; i++) {
+                phase += 2 * Math.PI * 140 / SAMPLE_RATE;
+                double v = random.nextGaussian() * 300;
+                for (int h = 1; h <= 12; h++) {
+                    v += 3000.0 / h * Math.sin(h * phase);
+                }
+                frame[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v)));
+            }
+        }
+    }
+
+    private void run(MicLevelMeter.Mode mode) {
+        MicLevelMeter meter = new MicLevelMeter(FRAME, mode, SAMPLE_RATE, MicLevelMeter.DEFAULT_BAND_EDGES);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mSink += meter.process(mFrames[i], 0, FRAME);
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    @Test
+    public void rms() {
+        run(MicLevelMeter.Mode.RMS);
+    }
+
+    @Test
+    public void dbfs() {
+        run(MicLevelMeter.Mode.DBFS);
+    }
+
+    @Test
+    public void spectrum() {
+        run(MicLevelMeter.Mode.SPECTRUM);
+    }
+
+    @Test
+    public void bands() {
+        run(MicLevelMeter.Mode.BANDS);
+    }
+
+    @Test
+    public void commonsMathSpectrum() {
+        int size = Integer.highestOneBit(FRAME - 1) << 1;
+        double[][] dataRI = new double[][]{ new double[size], new double[size] };
+        double[] data = new double[size / 2];
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            fft(mFrames[i], FRAME, dataRI, data);
+            double fftsum = 0;
+            for (double bin : data) {
+                fftsum += bin;
+            }
+            mSink += fftsum / data.length;
+            i = (i + 1) % FRAMES;
+        }
+    }
+
+    /**
+     * Sound.fft as it was before {@link MicLevelMeter}.
+     */
+    private static void fft(short[] buffer, int len, double[][] dataRI, double[] data) {
+        double[] dataR = dataRI[0];
+        double[] dataI = dataRI[1];
+        int len2 = dataR.length;
+
+        double powerInput = 0;
+        for (int i = 0; i < len; i++) {
+            dataR[i] = buffer[i] / (float) 0x7fff;
+            powerInput += dataR[i] * dataR[i];
+        }
+        powerInput = Math.sqrt(powerInput / len);
+        Arrays.fill(dataR, len, len2, 0);
+        Arrays.fill(dataI, 0);
+
+        FastFourierTransformer.transformInPlace(dataRI, DftNormalization.STANDARD, TransformType.FORWARD);
+
+        data[0] = 10 * Math.log10(Math.pow(Math.hypot(dataR[0], dataI[0]) / len2, 2));
+
+        double powerOutput = 0;
+        for (int i = 1; i < data.length; i++) {
+            double p = Math.hypot(dataR[i], dataI[i]);
+            p = p / len2;
+            p = p * p;
+            p = p * 2;
+            double dB = 10 * Math.log10(p);
+
+            powerOutput += p;
+            data[i] = dB;
+        }
+        powerOutput = Math.sqrt(powerOutput);
+    }
+}
@@ -10,6 +10,8 @@
 
 #include "vad_core.h"
 
+#include <string.h>
+
 #include "../signal_processing/include/signal_processing_library.h"
 #include "vad_filterbank.h"
 #include "vad_gmm.h"
@@ -467,6 +469,9 @@ static int16_t GmmProbability(VadInstT* self, int16_t* features,
     self->frame_counter++;
   }
 
+  self->last_log_likelihood_ratio = sum_log_likelihood_ratios;
+  self->last_threshold = totalTest;
+
   // Smooth with respect to transition hysteresis.
   if (!vadflag) {
     if (self->over_hang > 0) {
@@ -497,6 +502,10 @@ int WebRtcVad_InitCore(VadInstT* self) {
   // Initialization of general struct variables.
   self->vad = 1;  // Speech active (=1).
   self->frame_counter = 0;
+  memset(self->last_features, 0, sizeof(self->last_features));
+  self->last_total_power = 0;
+  self->last_log_likelihood_ratio = 0;
+  self->last_threshold = 0;
   self->over_hang = 0;
   self->num_of_speech = 0;
 
@@ -675,6 +684,9 @@ int WebRtcVad_CalcVad8khz(VadInstT* inst, int16_t* speech_frame,
     total_power = WebRtcVad_CalculateFeatures(inst, speech_frame, frame_length,
                                               feature_vector);
 
+    memcpy(inst->last_features, feature_vector, sizeof(feature_vector));
+    inst->last_total_power = total_power;
+
     // Make a VAD
     inst->vad = GmmProbability(inst, feature_vector, total_power, frame_length);
 
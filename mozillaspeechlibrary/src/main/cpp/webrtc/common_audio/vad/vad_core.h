@@ -51,6 +51,12 @@ typedef struct VadInstT_
     int16_t individual[3];
     int16_t total[3];
 
+    // Scores of the last frame, kept for callers that want more than the decision.
+    int16_t last_features[kNumChannels];
+    int16_t last_total_power;
+    int32_t last_log_likelihood_ratio;
+    int16_t last_threshold;
+
     int init_flag;
 
 } VadInstT;
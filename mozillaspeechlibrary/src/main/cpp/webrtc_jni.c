@@ -1,39 +1,221 @@
 #include "webrtc/common_audio/vad/include/webrtc_vad.h"
+#include "webrtc/common_audio/vad/vad_core.h"
 #include "webrtc/common_audio/signal_processing/include/signal_processing_library.h"
+#include <stdint.h>
 #include <stdlib.h>
+#include <string.h>
 #include "webrtc/common_audio/include/typedefs.h"
 #include <jni.h>
 
-#define AGGRESSIVENESS 3
-VadInst* internalHandle;
-int resultVad;
+// Each Vad object owns one VadInst, passed back and forth as a jlong. Nothing is global so
+// any number of instances can run on different threads, the Java side serializes calls on
+// a single instance.
 
-JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_start (JNIEnv * env, jobject obj){
-    int ret_state = 0;
-    internalHandle = NULL;
+JNIEXPORT jlong JNICALL Java_com_mozilla_speechlibrary_Vad_nativeCreate(JNIEnv * env, jclass clazz) {
+    VadInst* handle = NULL;
 
-    ret_state = WebRtcVad_Create(&internalHandle);
-    if (ret_state == -1) return -1;
-    ret_state =  WebRtcVad_Init(internalHandle);
-    if (ret_state == -1) return -2;
-    ret_state = WebRtcVad_set_mode(internalHandle, AGGRESSIVENESS);
-    if (ret_state == -1) return -3;
-    return ret_state;
+    if (WebRtcVad_Create(&handle) == -1) return 0;
+    return (jlong) (intptr_t) handle;
 }
 
-JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_stop(JNIEnv * env, jobject object) {
-    if (WebRtcVad_Free(internalHandle) == 0) {
-        internalHandle = NULL;
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeInit(JNIEnv * env, jclass clazz, jlong handle, jint mode) {
+    VadInst* inst = (VadInst*) (intptr_t) handle;
+
+    if (WebRtcVad_Init(inst) == -1) return -2;
+    if (WebRtcVad_set_mode(inst, mode) == -1) return -3;
+    return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeSetMode(JNIEnv * env, jclass clazz, jlong handle, jint mode) {
+    return WebRtcVad_set_mode((VadInst*) (intptr_t) handle, mode);
+}
+
+JNIEXPORT void JNICALL Java_com_mozilla_speechlibrary_Vad_nativeFree(JNIEnv * env, jclass clazz, jlong handle) {
+    WebRtcVad_Free((VadInst*) (intptr_t) handle);
+}
+
+// The VAD only reads the frame and never calls back into the VM, so the array is pinned
+// rather than copied, and released without copying back.
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeFeed(JNIEnv * env, jclass clazz, jlong handle, jint sampleRate, jshortArray bytes, jint offset, jint size) {
+    int result;
+    jshort *arrayElements = (*env)->GetPrimitiveArrayCritical(env, bytes, NULL);
+    if (arrayElements == NULL) return -1;
+
+    result = WebRtcVad_Process((VadInst*) (intptr_t) handle, sampleRate, arrayElements + offset, size);
+    (*env)->ReleasePrimitiveArrayCritical(env, bytes, arrayElements, JNI_ABORT);
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeFeedDirect(JNIEnv * env, jclass clazz, jlong handle, jint sampleRate, jobject buffer, jint byteOffset, jint size) {
+    char *address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) return -1;
+
+    return WebRtcVad_Process((VadInst*) (intptr_t) handle, sampleRate, (int16_t*) (address + byteOffset), size);
+}
+
+// Layout of the scores array, must match VadScores.
+#define SCORE_LLR 0
+#define SCORE_THRESHOLD 1
+#define SCORE_TOTAL_POWER 2
+#define SCORE_FEATURES 3
+#define SCORE_NOISE_MEANS (SCORE_FEATURES + kNumChannels)
+#define SCORE_SPEECH_MEANS (SCORE_NOISE_MEANS + kTableSize)
+#define SCORE_SIZE (SCORE_SPEECH_MEANS + kTableSize)
+
+// Same as nativeFeed, and then copies the likelihood ratio, features and model means the
+// decision was based on.
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeFeedScored(JNIEnv * env, jclass clazz, jlong handle, jint sampleRate, jshortArray bytes, jint offset, jint size, jintArray scores) {
+    VadInstT* inst = (VadInstT*) (intptr_t) handle;
+    jint values[SCORE_SIZE];
+    int result;
+    int i;
+
+    jshort *arrayElements = (*env)->GetPrimitiveArrayCritical(env, bytes, NULL);
+    if (arrayElements == NULL) return -1;
+
+    result = WebRtcVad_Process((VadInst*) inst, sampleRate, arrayElements + offset, size);
+    (*env)->ReleasePrimitiveArrayCritical(env, bytes, arrayElements, JNI_ABORT);
+    if (result < 0) return result;
+
+    values[SCORE_LLR] = inst->last_log_likelihood_ratio;
+    values[SCORE_THRESHOLD] = inst->last_threshold;
+    values[SCORE_TOTAL_POWER] = inst->last_total_power;
+    for (i = 0; i < kNumChannels; i++) {
+        values[SCORE_FEATURES + i] = inst->last_features[i];
+    }
+    for (i = 0; i < kTableSize; i++) {
+        values[SCORE_NOISE_MEANS + i] = inst->noise_means[i];
+        values[SCORE_SPEECH_MEANS + i] = inst->speech_means[i];
+    }
+    (*env)->SetIntArrayRegion(env, scores, 0, SCORE_SIZE, values);
+
+    return result;
+}
+
+#define BATCH_FRAMES 50
+
+// Runs the VAD over consecutive frames of a block and stores every WebRtcVad_Process
+// result. The array is only pinned for BATCH_FRAMES frames at a time so long blocks don't
+// hold up the GC.
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_nativeFeedFrames(JNIEnv * env, jclass clazz, jlong handle, jint sampleRate, jshortArray bytes, jint offset, jint frameLength, jint frames, jbyteArray decisions) {
+    jbyte results[BATCH_FRAMES];
+    int done = 0;
+
+    while (done < frames) {
+        int count = frames - done < BATCH_FRAMES ? frames - done : BATCH_FRAMES;
+        int i;
+        jshort *arrayElements = (*env)->GetPrimitiveArrayCritical(env, bytes, NULL);
+        if (arrayElements == NULL) return -1;
+
+        for (i = 0; i < count; i++) {
+            int16_t *frame = arrayElements + offset + (done + i) * frameLength;
+            results[i] = (jbyte) WebRtcVad_Process((VadInst*) (intptr_t) handle, sampleRate, frame, frameLength);
+        }
+        (*env)->ReleasePrimitiveArrayCritical(env, bytes, arrayElements, JNI_ABORT);
+
+        (*env)->SetByteArrayRegion(env, decisions, done, count, results);
+        done += count;
+    }
+
+    return done;
+}
+
+// Converts 48, 32 or 16 kHz audio with one or two channels to 16 kHz mono for
+// NativeResampler. The downmix and the decimation run in one pass over 10 ms blocks, frames
+// short of a block are kept in mono[] until the next call.
+#define RESAMPLER_MAX_BLOCK 480
+#define RESAMPLER_OUT_BLOCK 160
+
+typedef struct {
+    int sample_rate;
+    int channels;
+    int block;
+    int pending;
+    int16_t mono[RESAMPLER_MAX_BLOCK];
+    WebRtcSpl_State48khzTo16khz state48;
+    int32_t state32[8];
+    int32_t tmp[496];
+} Resampler;
+
+static void resampler_reset(Resampler* r) {
+    r->pending = 0;
+    WebRtcSpl_ResetResample48khzTo16khz(&r->state48);
+    memset(r->state32, 0, sizeof(r->state32));
+}
+
+static void resampler_block(Resampler* r, int16_t* out) {
+    switch (r->sample_rate) {
+        case 48000:
+            WebRtcSpl_Resample48khzTo16khz(r->mono, out, &r->state48, r->tmp);
+            break;
+        case 32000:
+            WebRtcSpl_DownsampleBy2(r->mono, (int16_t) r->block, out, r->state32);
+            break;
+        default:
+            memcpy(out, r->mono, RESAMPLER_OUT_BLOCK * sizeof(int16_t));
+            break;
     }
 }
 
-JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_isSilence(JNIEnv * env, jobject object) {
-    return resultVad;
+JNIEXPORT jlong JNICALL Java_com_mozilla_speechlibrary_audio_NativeResampler_nativeCreate(JNIEnv * env, jclass clazz, jint sampleRate, jint channels) {
+    Resampler* r;
+
+    if (sampleRate != 48000 && sampleRate != 32000 && sampleRate != 16000) return 0;
+    if (channels != 1 && channels != 2) return 0;
+
+    r = malloc(sizeof(Resampler));
+    if (r == NULL) return 0;
+    r->sample_rate = sampleRate;
+    r->channels = channels;
+    r->block = sampleRate / 100;
+    resampler_reset(r);
+    return (jlong) (intptr_t) r;
+}
+
+JNIEXPORT void JNICALL Java_com_mozilla_speechlibrary_audio_NativeResampler_nativeReset(JNIEnv * env, jclass clazz, jlong handle) {
+    resampler_reset((Resampler*) (intptr_t) handle);
+}
+
+JNIEXPORT void JNICALL Java_com_mozilla_speechlibrary_audio_NativeResampler_nativeFree(JNIEnv * env, jclass clazz, jlong handle) {
+    free((Resampler*) (intptr_t) handle);
 }
 
-JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_Vad_feed(JNIEnv * env, jobject object, jshortArray bytes, jint size) {
-    jshort *arrayElements = (*env)->GetShortArrayElements(env, bytes, 0);
-    resultVad = WebRtcVad_Process(internalHandle, 16000, arrayElements, size);
-    (*env)->ReleaseShortArrayElements(env, bytes, arrayElements, 0);
-    return resultVad;
-}
\ No newline at end of file
+// Both arrays are pinned for the whole call, the Java side keeps calls to a few blocks.
+// Returns the number of samples written to out.
+JNIEXPORT jint JNICALL Java_com_mozilla_speechlibrary_audio_NativeResampler_nativeProcess(JNIEnv * env, jclass clazz, jlong handle, jshortArray in, jint offset, jint length, jshortArray out, jint outOffset) {
+    Resampler* r = (Resampler*) (intptr_t) handle;
+    int frames = length / r->channels;
+    int written = 0;
+    int i;
+    jshort *input;
+    jshort *output;
+
+    input = (*env)->GetPrimitiveArrayCritical(env, in, NULL);
+    if (input == NULL) return -1;
+    output = (*env)->GetPrimitiveArrayCritical(env, out, NULL);
+    if (output == NULL) {
+        (*env)->ReleasePrimitiveArrayCritical(env, in, input, JNI_ABORT);
+        return -1;
+    }
+
+    input += offset;
+    output += outOffset;
+    for (i = 0; i < frames; i++) {
+        if (r->channels == 2) {
+            r->mono[r->pending++] = (int16_t) ((input[2 * i] + input[2 * i + 1]) >> 1);
+
+        } else {
+            r->mono[r->pending++] = input[i];
+        }
+
+        if (r->pending == r->block) {
+            resampler_block(r, output + written);
+            written += RESAMPLER_OUT_BLOCK;
+            r->pending = 0;
+        }
+    }
+
+    (*env)->ReleasePrimitiveArrayCritical(env, out, output - outOffset, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, in, input - offset, JNI_ABORT);
+    return written;
+}
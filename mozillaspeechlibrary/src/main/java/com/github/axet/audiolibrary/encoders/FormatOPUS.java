@@ -5,8 +5,6 @@ import android.content.Context;
 import com.github.axet.opusjni.Config;
 import com.github.axet.opusjni.Opus;
 import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
 
 @TargetApi(21)
 public class FormatOPUS implements Encoder {
@@ -15,14 +13,17 @@ public class FormatOPUS implements Encoder {
     public static final String EXT = "opus";
 
     public static final int SHORT_BYTES = Short.SIZE / Byte.SIZE;
+    public static final StreamResampler.Quality RESAMPLE_QUALITY = StreamResampler.Quality.MEDIUM;
 
     EncoderInfo info;
     Opus opus;
     long NumSamples;
-    ShortBuffer left;
+    short[] left; // partial frame, completed by the next call
+    int leftLen;
     int frameSize = 960; // default 20ms
     int hz;
-    Resample resample;
+    StreamResampler resample;
+    short[] resampled;
 
     public static void natives(Context context) {
         if (Config.natives) {
@@ -77,36 +78,35 @@ public class FormatOPUS implements Encoder {
     }
 
     public void create(final EncoderInfo info, ByteArrayOutputStream out) {
+        init(info);
+        opus = new Opus();
+        opus.open(info.channels, hz, getBitrate(info.hz));
+    }
+
+    void init(EncoderInfo info) {
         this.info = info;
         this.hz = match(info.hz);
 
-        if (hz != info.hz)
-            resample = new Resample(info.hz, info.channels, hz);
-
-        opus = new Opus();
-        opus.open(info.channels, hz, getBitrate(info.hz));
+        if (hz != info.hz) {
+            resample = new StreamResampler(info.hz, info.channels, hz, RESAMPLE_QUALITY);
+            resampled = new short[resample.getOutputSize(frameSize * info.channels)];
+        }
     }
 
     @Override
     public void encode(short[] buf, int pos, int len) {
         if (resample != null) {
-            resample.write(buf, pos, len);
-            resample();
+            int size = resample.getOutputSize(len);
+            if (resampled.length < size)
+                resampled = new short[size];
+            int n = resample.process(buf, pos, len, resampled, 0);
+            encode2(resampled, 0, n);
             return;
         }
         encode2(buf, pos, len);
     }
 
     void encode2(short[] buf, int pos, int len) {
-        if (left != null) {
-            ShortBuffer ss = ShortBuffer.allocate(left.position() + len);
-            left.flip();
-            ss.put(left);
-            ss.put(buf, pos, len);
-            buf = ss.array();
-            pos = 0;
-            len = ss.position();
-        }
         if (frameSize == 0) {
             if (len < 240) {
                 frameSize = 120;
@@ -123,41 +123,46 @@ public class FormatOPUS implements Encoder {
             }
         }
         int frameSizeStereo = frameSize * info.channels;
-        int lenEncode = len / frameSizeStereo * frameSizeStereo;
-        int end = pos + lenEncode;
-        for (int p = pos; p < end; p += frameSizeStereo) {
-            byte[] bb = opus.encode(buf, p, frameSizeStereo);
-            encode(ByteBuffer.wrap(bb), frameSize);
-            NumSamples += frameSizeStereo / info.channels;
+        if (left == null || left.length != frameSizeStereo) {
+            left = new short[frameSizeStereo];
+            leftLen = 0;
         }
-        int diff = len - lenEncode;
-        if (diff > 0) {
-            left = ShortBuffer.allocate(diff);
-            left.put(buf, end, diff);
-        } else {
-            left = null;
+        int end = pos + len;
+        if (leftLen > 0) {
+            int n = Math.min(frameSizeStereo - leftLen, len);
+            System.arraycopy(buf, pos, left, leftLen, n);
+            leftLen += n;
+            pos += n;
+            if (leftLen < frameSizeStereo)
+                return;
+            encodeFrame(left, 0, frameSizeStereo);
+            leftLen = 0;
         }
+        for (; pos + frameSizeStereo <= end; pos += frameSizeStereo) // whole frames straight from buf
+            encodeFrame(buf, pos, frameSizeStereo);
+        leftLen = end - pos;
+        System.arraycopy(buf, pos, left, 0, leftLen);
     }
 
-    void resample() {
-        ByteBuffer bb;
-        while ((bb = resample.read()) != null) {
-            int len = bb.position() / SHORT_BYTES;
-            short[] b = new short[len];
-            bb.flip();
-            bb.asShortBuffer().get(b, 0, len);
-            encode2(b, 0, len);
-        }
+    void encodeFrame(short[] buf, int pos, int len) {
+        encode(encodeOpus(buf, pos, len), frameSize);
+        NumSamples += len / info.channels;
+    }
+
+    byte[] encodeOpus(short[] buf, int pos, int len) { // the packet is the only allocation per frame
+        return opus.encode(buf, pos, len);
     }
 
-    void encode(ByteBuffer bb, long dur) {
+    void encode(byte[] packet, long dur) {
     }
 
     public void close() {
         if (resample != null) {
-            resample.end();
-            resample();
-            resample.close();
+            int size = resample.getFlushSize();
+            if (resampled.length < size)
+                resampled = new short[size];
+            int n = resample.flush(resampled, 0);
+            encode2(resampled, 0, n);
             resample = null;
         }
         opus.close();
@@ -9,7 +9,6 @@ import org.gagravarr.opus.OpusInfo;
 import org.gagravarr.opus.OpusTags;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 // https://wiki.xiph.org/OggOpus
 @TargetApi(23)
@@ -46,8 +45,8 @@ public class FormatOPUS_OGG extends FormatOPUS {
     }
 
     @Override
-    void encode(ByteBuffer bb, long dur) {
-        OpusAudioData frame = new OpusAudioData(bb.array());
+    void encode(byte[] packet, long dur) {
+        OpusAudioData frame = new OpusAudioData(packet);
         long end = NumSamples + dur;
         long gr = OpusAudioData.OPUS_GRANULE_RATE * end / info.hz; // Ogg gr always at 48000hz
         frame.setGranulePosition(gr);
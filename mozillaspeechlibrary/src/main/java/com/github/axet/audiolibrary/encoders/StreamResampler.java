@@ -0,0 +1,195 @@
+package com.github.axet.audiolibrary.encoders;
+
+/**
+ * Polyphase windowed sinc resampler for interleaved 16 bit PCM. Runs on the caller's thread:
+ * every call returns all the output its input allows, there is no queue and no lag beyond the
+ * filter's group delay of about {@code taps / 2} input frames. Filter state is allocated up
+ * front, the input history only grows if a larger block than before comes in.
+ */
+public class StreamResampler {
+    public static final String TAG = StreamResampler.class.getSimpleName();
+
+    public static final int DEFAULT_BLOCK = 2048; // input frames the history holds without growing
+
+    public enum Quality {
+        FAST(8, 0.80, 5),
+        MEDIUM(16, 0.90, 7),
+        BEST(32, 0.95, 9);
+
+        final int taps; // input frames per output frame, at the lower of the two rates
+        final double rolloff; // passband edge relative to the lower Nyquist frequency
+        final double beta; // Kaiser window
+
+        Quality(int taps, double rolloff, double beta) {
+            this.taps = taps;
+            this.rolloff = rolloff;
+            this.beta = beta;
+        }
+    }
+
+    int channels;
+    int up;
+    int down;
+    int taps;
+    float[] filter; // per phase, in input order: filter[p * taps + k] weighs frame next - taps + 1 + k
+    float[] history; // interleaved, the first taps - 1 frames are the filter's memory
+    int frames; // frames in history
+    int next; // frame in history of the next output
+    int phase; // phase of the next output, 0 to up - 1
+
+    public StreamResampler(int sampleRate, int channels, int hz, Quality quality) {
+        if (sampleRate <= 0 || hz <= 0 || channels <= 0)
+            throw new IllegalArgumentException("Bad format: " + sampleRate + " to " + hz + " Hz, " + channels + " channels");
+        int g = gcd(sampleRate, hz);
+        this.channels = channels;
+        this.up = hz / g;
+        this.down = sampleRate / g;
+        this.taps = (quality.taps * Math.max(up, down) + up - 1) / up; // longer when decimating
+        this.filter = design(up, down, taps, quality.rolloff, quality.beta);
+        this.history = new float[(taps + DEFAULT_BLOCK) * channels];
+        reset();
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(history, 0);
+        frames = taps - 1;
+        next = taps - 1;
+        phase = 0;
+    }
+
+    static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12)
+                break;
+        }
+        return sum;
+    }
+
+    static float[] design(int up, int down, int taps, double rolloff, double beta) {
+        int n = taps * up; // prototype length at the upsampled rate
+        double fc = 0.5 * rolloff / Math.max(up, down); // cutoff in cycles per upsampled sample
+        double center = (n - 1) / 2.0;
+        double norm = bessel0(beta);
+        double[] h = new double[n];
+        for (int j = 0; j < n; j++) {
+            double x = j - center;
+            double sinc = x == 0 ? 1 : Math.sin(2 * Math.PI * fc * x) / (2 * Math.PI * fc * x);
+            double r = 2 * j / (double) (n - 1) - 1;
+            h[j] = 2 * fc * sinc * bessel0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+        }
+        float[] filter = new float[n];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            for (int q = 0; q < taps; q++)
+                sum += h[p + q * up];
+            for (int q = 0; q < taps; q++) // unity DC gain for every phase
+                filter[p * taps + taps - 1 - q] = (float) (h[p + q * up] / sum);
+        }
+        return filter;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Delay the filter adds, in output frames.
+     */
+    public double getDelay() {
+        return (taps * up - 1) / 2.0 / down;
+    }
+
+    /**
+     * Most samples {@link #process(short[], int, int, short[], int)} can return for {@code len}
+     * input samples, to size the output buffer.
+     */
+    public int getOutputSize(int len) {
+        return (int) (((long) len / channels + 1) * up / down + 1) * channels;
+    }
+
+    /**
+     * Resamples {@code len} interleaved samples.
+     *
+     * @return number of samples written to {@code out}, at most {@link #getOutputSize(int)}.
+     */
+    public int process(short[] buf, int pos, int len, short[] out, int outPos) {
+        int n = len / channels;
+        ensure(n);
+        int h = frames * channels;
+        for (int i = 0; i < n * channels; i++)
+            history[h + i] = buf[pos + i];
+        frames += n;
+        return drain(out, outPos);
+    }
+
+    /**
+     * Most samples {@link #flush(short[], int)} can return.
+     */
+    public int getFlushSize() {
+        return getOutputSize((taps / 2 + 1) * channels);
+    }
+
+    /**
+     * Pushes silence through the filter to get the output still held back by its delay, at the
+     * end of a stream.
+     *
+     * @return number of samples written to {@code out}, at most {@link #getFlushSize()}.
+     */
+    public int flush(short[] out, int outPos) {
+        int n = taps / 2 + 1;
+        ensure(n);
+        java.util.Arrays.fill(history, frames * channels, (frames + n) * channels, 0);
+        frames += n;
+        return drain(out, outPos);
+    }
+
+    void ensure(int n) {
+        if ((frames + n) * channels > history.length) {
+            float[] h = new float[(frames + n) * channels];
+            System.arraycopy(history, 0, h, 0, frames * channels);
+            history = h;
+        }
+    }
+
+    int drain(short[] out, int outPos) {
+        int o = outPos;
+        while (next < frames) {
+            int f = phase * taps;
+            int base = (next - taps + 1) * channels;
+            for (int c = 0; c < channels; c++) {
+                float acc = 0;
+                for (int k = 0, i = base + c; k < taps; k++, i += channels)
+                    acc += history[i] * filter[f + k];
+                int s = Math.round(acc);
+                if (s > Short.MAX_VALUE)
+                    s = Short.MAX_VALUE;
+                else if (s < Short.MIN_VALUE)
+                    s = Short.MIN_VALUE;
+                out[o++] = (short) s;
+            }
+            phase += down;
+            next += phase / up;
+            phase %= up;
+        }
+        int drop = Math.min(next, frames) - (taps - 1); // keep the filter's memory
+        if (drop > 0) {
+            System.arraycopy(history, drop * channels, history, 0, (frames - drop) * channels);
+            frames -= drop;
+            next -= drop;
+        }
+        return o - outPos;
+    }
+}
@@ -0,0 +1,5 @@
+package com.mozilla.speechlibrary;
+
+public interface MicLevelListener {
+    void onMicLevel(double level);
+}
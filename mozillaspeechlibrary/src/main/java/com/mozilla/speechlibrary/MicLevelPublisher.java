@@ -0,0 +1,153 @@
+package com.mozilla.speechlibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans mic levels out from the capture thread to subscribers on the callback executor, the main thread by default. Each
+ * subscriber picks a rate and an aggregation, levels are aggregated over windows measured in
+ * samples and at most one delivery per subscriber is queued at a time, so a slow UI gets
+ * fewer, fresher updates instead of a backlog. Capture skips level metering altogether while
+ * {@link #hasSubscribers()} is false.
+ */
+public class MicLevelPublisher {
+
+    public enum Aggregation {
+        /** Loudest frame in the window. */
+        MAX,
+        /** Average over the frames in the window. */
+        MEAN,
+        /** Loudest frame seen, held for {@link #PEAK_HOLD_MS} before following the signal down. */
+        PEAK_HOLD
+    }
+
+    /** Rate that delivers every captured frame. */
+    public static final int EVERY_FRAME = 0;
+    /** Rate that turns the per session {@code onMicActivity} callback off. */
+    public static final int DISABLED = -1;
+    public static final int PEAK_HOLD_MS = 1000;
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+
+    private final Executor mExecutor;
+    private volatile Subscription[] mSubscriptions = EMPTY;
+
+    public MicLevelPublisher(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    public boolean hasSubscribers() {
+        return mSubscriptions.length > 0;
+    }
+
+    /**
+     * @param rateHz deliveries per second, or {@link #EVERY_FRAME}.
+     */
+    public synchronized void subscribe(@NonNull MicLevelListener listener, int rateHz,
+                                       @NonNull Aggregation aggregation) {
+        unsubscribe(listener);
+
+        Subscription[] subscriptions = new Subscription[mSubscriptions.length + 1];
+        System.arraycopy(mSubscriptions, 0, subscriptions, 0, mSubscriptions.length);
+        subscriptions[mSubscriptions.length] = new Subscription(listener, rateHz, aggregation);
+        mSubscriptions = subscriptions;
+    }
+
+    public synchronized void unsubscribe(@NonNull MicLevelListener listener) {
+        Subscription[] current = mSubscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].mListener == listener) {
+                current[i].mActive = false;
+                Subscription[] subscriptions = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, subscriptions, 0, i);
+                System.arraycopy(current, i + 1, subscriptions, i, current.length - i - 1);
+                mSubscriptions = subscriptions;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called from the capture thread once per frame.
+     */
+    public void publish(double level, int samples, int sampleRate) {
+        for (Subscription subscription : mSubscriptions) {
+            subscription.add(level, samples, sampleRate);
+        }
+    }
+
+    private class Subscription implements Runnable {
+
+        private final MicLevelListener mListener;
+        private final int mRateHz;
+        private final Aggregation mAggregation;
+        private final AtomicBoolean mPending = new AtomicBoolean();
+        private volatile double mValue;
+        private volatile boolean mActive = true;
+
+        // Capture thread state
+        private long mWindowSamples;
+        private int mWindowFrames;
+        private double mWindowSum;
+        private double mWindowMax = Double.NEGATIVE_INFINITY;
+        private double mHeldPeak = Double.NEGATIVE_INFINITY;
+        private long mHeldSamples;
+
+        Subscription(MicLevelListener listener, int rateHz, Aggregation aggregation) {
+            mListener = listener;
+            mRateHz = rateHz;
+            mAggregation = aggregation;
+        }
+
+        void add(double level, int samples, int sampleRate) {
+            mWindowSamples += samples;
+            mWindowFrames++;
+            mWindowSum += level;
+            mWindowMax = Math.max(mWindowMax, level);
+
+            if (mRateHz > 0 && mWindowSamples * mRateHz < sampleRate) {
+                return;
+            }
+
+            double value;
+            switch (mAggregation) {
+                case MEAN:
+                    value = mWindowSum / mWindowFrames;
+                    break;
+
+                case PEAK_HOLD:
+                    mHeldSamples += mWindowSamples;
+                    if (mWindowMax >= mHeldPeak || mHeldSamples * 1000 >= (long) PEAK_HOLD_MS * sampleRate) {
+                        mHeldPeak = mWindowMax;
+                        mHeldSamples = 0;
+                    }
+                    value = mHeldPeak;
+                    break;
+
+                default:
+                    value = mWindowMax;
+                    break;
+            }
+
+            mWindowSamples = 0;
+            mWindowFrames = 0;
+            mWindowSum = 0;
+            mWindowMax = Double.NEGATIVE_INFINITY;
+
+            mValue = value;
+            if (mPending.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            mPending.set(false);
+            if (mActive) {
+                mListener.onMicLevel(mValue);
+            }
+        }
+    }
+}
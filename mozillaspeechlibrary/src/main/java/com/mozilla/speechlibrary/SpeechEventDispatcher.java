@@ -0,0 +1,123 @@
+package com.mozilla.speechlibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mozilla.speechlibrary.stt.STTResult;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers recognition events to in-process listeners by calling them directly on the given
+ * {@link Executor}, without going through {@link SpeechResultReceiver} and {@link android.os.Bundle}
+ * marshalling. Listeners may be added and removed from any thread, including from a callback.
+ */
+public class SpeechEventDispatcher implements SpeechResultCallback {
+
+    private static final SpeechResultCallback[] EMPTY = new SpeechResultCallback[0];
+
+    private final Executor mExecutor;
+    // Copied on write like a CopyOnWriteArrayList, but iterating an array doesn't allocate,
+    // which matters for the mic level that is delivered every frame
+    private volatile SpeechResultCallback[] mListeners = EMPTY;
+
+    public SpeechEventDispatcher(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    public synchronized void addListener(@NonNull SpeechResultCallback listener) {
+        SpeechResultCallback[] current = mListeners;
+        for (SpeechResultCallback added : current) {
+            if (added == listener) {
+                return;
+            }
+        }
+
+        SpeechResultCallback[] listeners = new SpeechResultCallback[current.length + 1];
+        System.arraycopy(current, 0, listeners, 0, current.length);
+        listeners[current.length] = listener;
+        mListeners = listeners;
+    }
+
+    public synchronized void removeListener(@NonNull SpeechResultCallback listener) {
+        SpeechResultCallback[] current = mListeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                SpeechResultCallback[] listeners = new SpeechResultCallback[current.length - 1];
+                System.arraycopy(current, 0, listeners, 0, i);
+                System.arraycopy(current, i + 1, listeners, i, current.length - i - 1);
+                mListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Calls the listeners on the current thread. Used by {@link MicLevelPublisher}, which
+     * already runs its deliveries on the executor.
+     */
+    public void notifyMicActivity(double fftsum) {
+        for (SpeechResultCallback listener : mListeners) {
+            listener.onMicActivity(fftsum);
+        }
+    }
+
+    @Override
+    public void onStartListen() {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onStartListen();
+            }
+        });
+    }
+
+    @Override
+    public void onMicActivity(double fftsum) {
+        mExecutor.execute(() -> notifyMicActivity(fftsum));
+    }
+
+    @Override
+    public void onDecoding() {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onDecoding();
+            }
+        });
+    }
+
+    @Override
+    public void onSTTResult(@Nullable STTResult result) {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onSTTResult(result);
+            }
+        });
+    }
+
+    @Override
+    public void onPartialResult(@NonNull STTResult result) {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onPartialResult(result);
+            }
+        });
+    }
+
+    @Override
+    public void onNoVoice() {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onNoVoice();
+            }
+        });
+    }
+
+    @Override
+    public void onError(@ErrorType int errorType, @Nullable String error) {
+        mExecutor.execute(() -> {
+            for (SpeechResultCallback listener : mListeners) {
+                listener.onError(errorType, error);
+            }
+        });
+    }
+}
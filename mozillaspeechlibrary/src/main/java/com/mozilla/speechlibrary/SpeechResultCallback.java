@@ -1,6 +1,7 @@
 package com.mozilla.speechlibrary;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.mozilla.speechlibrary.stt.STTResult;
@@ -20,6 +21,13 @@ public interface SpeechResultCallback {
     void onMicActivity(double fftsum);
     void onDecoding();
     void onSTTResult(@Nullable STTResult result);
+
+    /**
+     * The text recognized so far while the user is still speaking, see
+     * {@link SpeechServiceSettings.Builder#withPartialResultIntervalMs(int)}. Later results
+     * replace earlier ones.
+     */
+    default void onPartialResult(@NonNull STTResult result) {}
     void onNoVoice();
     void onError(@ErrorType int errorType, @Nullable String error);
 }
@@ -5,28 +5,35 @@ import android.os.Handler;
 import android.os.ResultReceiver;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.mozilla.speechlibrary.stt.STTResult;
 
-import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Binder transport for recognition events, for listeners living in another process. In-process
+ * listeners should use {@link SpeechEventDispatcher}, which skips the {@link Bundle} round trip.
+ * The sending side wraps the parcelled receiver with {@link #sender(ResultReceiver)}.
+ */
 public class SpeechResultReceiver extends ResultReceiver {
 
     public static final String ERROR_TYPE = "errorType";
     public static final String PARAM_RESULT = "result";
     public static final String PARAM_FFT_SUM = "fftsum";
 
-    private ArrayList<SpeechResultCallback> mReceivers;
+    private static final SpeechState[] STATES = SpeechState.values();
+
+    private CopyOnWriteArrayList<SpeechResultCallback> mReceivers;
 
     public SpeechResultReceiver(Handler handler) {
         super(handler);
 
-        mReceivers = new ArrayList<>();
+        mReceivers = new CopyOnWriteArrayList<>();
     }
 
     public void addReceiver(@NonNull SpeechResultCallback receiver) {
-        mReceivers.add(receiver);
+        mReceivers.addIfAbsent(receiver);
     }
 
     public void removeReceiver(@NonNull SpeechResultCallback receiver) {
@@ -35,33 +42,89 @@ public class SpeechResultReceiver extends ResultReceiver {
 
     @Override
     protected void onReceiveResult(int resultCode, Bundle resultData) {
-        try {
-            mReceivers.forEach(receiver -> {
-                switch (SpeechState.values()[resultCode]) {
-                    case DECODING:
-                        receiver.onDecoding();
-                        break;
-                    case MIC_ACTIVITY:
-                        receiver.onMicActivity(resultData.getDouble(PARAM_FFT_SUM));
-                        break;
-                    case STT_RESULT:
-                        receiver.onSTTResult((STTResult) resultData.getSerializable(PARAM_RESULT));
-                        break;
-                    case START_LISTEN:
-                        receiver.onStartListen();
-                        break;
-                    case NO_VOICE:
-                        receiver.onNoVoice();
-                        break;
-                    case ERROR:
-                        receiver.onError(resultData.getInt(ERROR_TYPE), resultData.getString(PARAM_RESULT));
-                        break;
-                }
-            });
-
-        } catch (ConcurrentModificationException e) {
-            e.printStackTrace();
+        if (resultCode < 0 || resultCode >= STATES.length) {
+            return;
+        }
+
+        SpeechState state = STATES[resultCode];
+        for (SpeechResultCallback receiver : mReceivers) {
+            switch (state) {
+                case DECODING:
+                    receiver.onDecoding();
+                    break;
+                case MIC_ACTIVITY:
+                    receiver.onMicActivity(resultData.getDouble(PARAM_FFT_SUM));
+                    break;
+                case STT_RESULT:
+                    receiver.onSTTResult((STTResult) resultData.getSerializable(PARAM_RESULT));
+                    break;
+                case PARTIAL_RESULT:
+                    receiver.onPartialResult((STTResult) resultData.getSerializable(PARAM_RESULT));
+                    break;
+                case START_LISTEN:
+                    receiver.onStartListen();
+                    break;
+                case NO_VOICE:
+                    receiver.onNoVoice();
+                    break;
+                case ERROR:
+                    receiver.onError(resultData.getInt(ERROR_TYPE), resultData.getString(PARAM_RESULT));
+                    break;
+            }
         }
     }
 
+    /**
+     * Marshals every callback into a {@link Bundle} sent through {@code receiver}, typically a
+     * {@link SpeechResultReceiver} received from another process.
+     */
+    @NonNull
+    public static SpeechResultCallback sender(@NonNull ResultReceiver receiver) {
+        return new SpeechResultCallback() {
+
+            @Override
+            public void onStartListen() {
+                receiver.send(SpeechState.START_LISTEN.ordinal(), new Bundle());
+            }
+
+            @Override
+            public void onMicActivity(double fftsum) {
+                Bundle bundle = new Bundle();
+                bundle.putDouble(PARAM_FFT_SUM, fftsum);
+                receiver.send(SpeechState.MIC_ACTIVITY.ordinal(), bundle);
+            }
+
+            @Override
+            public void onDecoding() {
+                receiver.send(SpeechState.DECODING.ordinal(), new Bundle());
+            }
+
+            @Override
+            public void onSTTResult(@Nullable STTResult result) {
+                Bundle bundle = new Bundle();
+                bundle.putSerializable(PARAM_RESULT, result);
+                receiver.send(SpeechState.STT_RESULT.ordinal(), bundle);
+            }
+
+            @Override
+            public void onPartialResult(@NonNull STTResult result) {
+                Bundle bundle = new Bundle();
+                bundle.putSerializable(PARAM_RESULT, result);
+                receiver.send(SpeechState.PARTIAL_RESULT.ordinal(), bundle);
+            }
+
+            @Override
+            public void onNoVoice() {
+                receiver.send(SpeechState.NO_VOICE.ordinal(), new Bundle());
+            }
+
+            @Override
+            public void onError(@ErrorType int errorType, @Nullable String error) {
+                Bundle bundle = new Bundle();
+                bundle.putInt(ERROR_TYPE, errorType);
+                bundle.putString(PARAM_RESULT, error);
+                receiver.send(SpeechState.ERROR.ordinal(), bundle);
+            }
+        };
+    }
 }
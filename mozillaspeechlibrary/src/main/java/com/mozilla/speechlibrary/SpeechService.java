@@ -1,26 +1,70 @@
 package com.mozilla.speechlibrary;
 
 import android.content.Context;
+import android.os.Handler;
 import android.os.Process;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.mozilla.speechlibrary.audio.AudioSource;
 import com.mozilla.speechlibrary.recognition.LocalSpeechRecognition;
 import com.mozilla.speechlibrary.recognition.NetworkSpeechRecognition;
 import com.mozilla.speechlibrary.recognition.SpeechRecognition;
+import com.mozilla.speechlibrary.stt.ModelCache;
+import com.mozilla.speechlibrary.stt.ModelPreload;
 
 import org.mozilla.geckoview.GeckoWebExecutor;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 public class SpeechService {
 
     private Context mContext;
     private SpeechRecognition mSpeechRecognition;
+    private Executor mCallbackExecutor;
+    private MicLevelPublisher mMicLevels;
+    private VadAdaptationListener mVadAdaptationListener;
 
     public SpeechService(@NonNull Context context) {
+        this(context, new Handler(context.getMainLooper())::post);
+    }
+
+    /**
+     * @param callbackExecutor where {@link SpeechResultCallback} and {@link MicLevelListener}
+     *                         calls are made, e.g. a background executor for headless use.
+     */
+    public SpeechService(@NonNull Context context, @NonNull Executor callbackExecutor) {
         mContext = context;
+        mCallbackExecutor = callbackExecutor;
+        mMicLevels = new MicLevelPublisher(callbackExecutor);
+    }
+
+    /**
+     * Subscribes to mic levels of every session started by this service, on the callback executor.
+     * Levels aren't computed at all while there are no subscribers.
+     *
+     * @param rateHz deliveries per second, e.g. 15, 30 or 60, or
+     *               {@link MicLevelPublisher#EVERY_FRAME}.
+     */
+    public void addMicLevelListener(@NonNull MicLevelListener listener, int rateHz,
+                                    @NonNull MicLevelPublisher.Aggregation aggregation) {
+        mMicLevels.subscribe(listener, rateHz, aggregation);
+    }
+
+    public void removeMicLevelListener(@NonNull MicLevelListener listener) {
+        mMicLevels.unsubscribe(listener);
+    }
+
+    /**
+     * Reports the VAD switches of sessions started with
+     * {@link SpeechServiceSettings.Builder#withAdaptiveVad(boolean)}, on the callback executor.
+     */
+    synchronized
+    public void setVadAdaptationListener(@Nullable VadAdaptationListener listener) {
+        mVadAdaptationListener = listener;
     }
 
     synchronized
@@ -30,22 +74,72 @@ public class SpeechService {
 
     synchronized
     public void start(@NonNull SpeechServiceSettings settings, @Nullable GeckoWebExecutor executor, @NonNull SpeechResultCallback delegate) {
+        start(settings, executor, null, delegate);
+    }
+
+    /**
+     * Same as {@link #start(SpeechServiceSettings, GeckoWebExecutor, SpeechResultCallback)} but
+     * reads audio from {@code source} instead of the microphone, e.g. a
+     * {@link com.mozilla.speechlibrary.audio.FileAudioSource} to replay a recorded session.
+     */
+    synchronized
+    public void start(@NonNull SpeechServiceSettings settings,
+                      @Nullable GeckoWebExecutor executor,
+                      @Nullable AudioSource source,
+                      @NonNull SpeechResultCallback delegate) {
         if (mSpeechRecognition != null && mSpeechRecognition.isRunning()) {
             mSpeechRecognition.stop();
         }
 
         if (settings.useUseDeepSpeech()) {
             mSpeechRecognition = new LocalSpeechRecognition(
-                    mContext);
+                    mContext,
+                    mCallbackExecutor,
+                    mMicLevels);
 
         } else {
             mSpeechRecognition = new NetworkSpeechRecognition(
                     mContext,
-                    executor
+                    executor,
+                    mCallbackExecutor,
+                    mMicLevels
             );
         }
 
-        execute(() -> mSpeechRecognition.start(settings, delegate));
+        mSpeechRecognition.setVadAdaptationListener(mVadAdaptationListener);
+
+        execute(() -> mSpeechRecognition.start(settings, source, delegate));
+    }
+
+    /**
+     * Loads the DeepSpeech model of {@link SpeechServiceSettings#getModelPath()} on a background
+     * thread and warms it up, so the next local session starts right away, e.g. at startup or
+     * when the mic button is shown. The model stays loaded while unused for
+     * {@link ModelCache#setIdleTimeoutMs(long) the idle timeout}.
+     *
+     * @return the load and warm-up timings, completed on the callback executor.
+     */
+    @NonNull
+    public CompletableFuture<ModelPreload> preload(@NonNull SpeechServiceSettings settings) {
+        CompletableFuture<ModelPreload> future = new CompletableFuture<>();
+        String modelPath = settings.getModelPath();
+        if (modelPath == null) {
+            future.completeExceptionally(new IllegalArgumentException("No model path"));
+            return future;
+        }
+
+        ModelCache models = ModelCache.getInstance(mContext);
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                ModelPreload preload = models.preload(modelPath);
+                mCallbackExecutor.execute(() -> future.complete(preload));
+
+            } catch (Exception e) {
+                mCallbackExecutor.execute(() -> future.completeExceptionally(e));
+            }
+        }, "Model Preload").start();
+        return future;
     }
 
     public void stop() {
@@ -3,6 +3,13 @@ package com.mozilla.speechlibrary;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.mozilla.speechlibrary.audio.AudioPipeline;
+import com.mozilla.speechlibrary.audio.GainControl;
+import com.mozilla.speechlibrary.audio.MicLevelMeter;
+import com.mozilla.speechlibrary.audio.NativeResampler;
+import com.mozilla.speechlibrary.audio.ShortRingBuffer;
+import com.mozilla.speechlibrary.stt.ModelCache;
+
 import java.io.Serializable;
 
 public class SpeechServiceSettings implements Serializable {
@@ -13,6 +20,25 @@ public class SpeechServiceSettings implements Serializable {
     private String mProductTag;
     private boolean mUseDeepSpeech;
     private String mModelPath;
+    private MicLevelMeter.Mode mMicLevelMode;
+    private int mHangoverMs;
+    private int mMinSpeechMs;
+    private int mMaxUtteranceMs;
+    private ShortRingBuffer.OverflowPolicy mAudioOverflowPolicy;
+    private int mPreRollMs;
+    private GainControl.Mode mGainMode;
+    private int mMicActivityRate;
+    private MicLevelPublisher.Aggregation mMicActivityAggregation;
+    private int mSampleRate;
+    private int mVadFrameMs;
+    private Vad.Mode mVadMode;
+    private boolean mUseVadPreGate;
+    private boolean mUseAdaptiveVad;
+    private int mCaptureSampleRate;
+    private int mCaptureChannels;
+    private boolean mUseStreamingUpload;
+    private AudioPipeline.Threading mPipelineThreading;
+    private int mPartialResultIntervalMs;
 
     public SpeechServiceSettings(@NonNull Builder builder) {
         mUseStoreSamples = builder.storeSamples;
@@ -21,6 +47,25 @@ public class SpeechServiceSettings implements Serializable {
         mProductTag = builder.productTag;
         mUseDeepSpeech = builder.useDeepSpeech;
         mModelPath = builder.modelPath;
+        mMicLevelMode = builder.micLevelMode;
+        mHangoverMs = builder.hangoverMs;
+        mMinSpeechMs = builder.minSpeechMs;
+        mMaxUtteranceMs = builder.maxUtteranceMs;
+        mAudioOverflowPolicy = builder.audioOverflowPolicy;
+        mPreRollMs = builder.preRollMs;
+        mGainMode = builder.gainMode;
+        mMicActivityRate = builder.micActivityRate;
+        mMicActivityAggregation = builder.micActivityAggregation;
+        mSampleRate = builder.sampleRate;
+        mVadFrameMs = builder.vadFrameMs;
+        mVadMode = builder.vadMode;
+        mUseVadPreGate = builder.vadPreGate;
+        mUseAdaptiveVad = builder.adaptiveVad;
+        mCaptureSampleRate = builder.captureSampleRate;
+        mCaptureChannels = builder.captureChannels;
+        mUseStreamingUpload = builder.streamingUpload;
+        mPipelineThreading = builder.pipelineThreading;
+        mPartialResultIntervalMs = builder.partialResultIntervalMs;
     }
 
     public boolean useStoreSamples() {
@@ -50,6 +95,88 @@ public class SpeechServiceSettings implements Serializable {
         return mModelPath;
     }
 
+    @NonNull
+    public MicLevelMeter.Mode getMicLevelMode() {
+        return mMicLevelMode;
+    }
+
+    public int getHangoverMs() {
+        return mHangoverMs;
+    }
+
+    public int getMinSpeechMs() {
+        return mMinSpeechMs;
+    }
+
+    public int getMaxUtteranceMs() {
+        return mMaxUtteranceMs;
+    }
+
+    @NonNull
+    public ShortRingBuffer.OverflowPolicy getAudioOverflowPolicy() {
+        return mAudioOverflowPolicy;
+    }
+
+    public int getPreRollMs() {
+        return mPreRollMs;
+    }
+
+    @NonNull
+    public GainControl.Mode getGainMode() {
+        return mGainMode;
+    }
+
+    public int getMicActivityRate() {
+        return mMicActivityRate;
+    }
+
+    @NonNull
+    public MicLevelPublisher.Aggregation getMicActivityAggregation() {
+        return mMicActivityAggregation;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getVadFrameMs() {
+        return mVadFrameMs;
+    }
+
+    @NonNull
+    public Vad.Mode getVadMode() {
+        return mVadMode;
+    }
+
+    public boolean useVadPreGate() {
+        return mUseVadPreGate;
+    }
+
+    public boolean useAdaptiveVad() {
+        return mUseAdaptiveVad;
+    }
+
+    public int getCaptureSampleRate() {
+        return mCaptureSampleRate > 0 ? mCaptureSampleRate : mSampleRate;
+    }
+
+    public int getCaptureChannels() {
+        return mCaptureChannels;
+    }
+
+    public boolean useStreamingUpload() {
+        return mUseStreamingUpload;
+    }
+
+    @NonNull
+    public AudioPipeline.Threading getPipelineThreading() {
+        return mPipelineThreading;
+    }
+
+    public int getPartialResultIntervalMs() {
+        return mPartialResultIntervalMs;
+    }
+
     public static class Builder {
 
         private boolean storeSamples;
@@ -58,6 +185,25 @@ public class SpeechServiceSettings implements Serializable {
         private String productTag;
         private boolean useDeepSpeech;
         private String modelPath;
+        private MicLevelMeter.Mode micLevelMode;
+        private int hangoverMs;
+        private int minSpeechMs;
+        private int maxUtteranceMs;
+        private ShortRingBuffer.OverflowPolicy audioOverflowPolicy;
+        private int preRollMs;
+        private GainControl.Mode gainMode;
+        private int micActivityRate;
+        private MicLevelPublisher.Aggregation micActivityAggregation;
+        private int sampleRate;
+        private int vadFrameMs;
+        private Vad.Mode vadMode;
+        private boolean vadPreGate;
+        private boolean adaptiveVad;
+        private int captureSampleRate;
+        private int captureChannels;
+        private boolean streamingUpload;
+        private AudioPipeline.Threading pipelineThreading;
+        private int partialResultIntervalMs;
 
         public Builder() {
             storeSamples = false;
@@ -66,6 +212,25 @@ public class SpeechServiceSettings implements Serializable {
             productTag = "moz-android-speech-lib";
             useDeepSpeech = false;
             modelPath = null;
+            micLevelMode = MicLevelMeter.Mode.SPECTRUM;
+            hangoverMs = 1500;
+            minSpeechMs = 250;
+            maxUtteranceMs = 10000;
+            audioOverflowPolicy = ShortRingBuffer.OverflowPolicy.BLOCK;
+            preRollMs = 0;
+            gainMode = GainControl.Mode.FIXED;
+            micActivityRate = MicLevelPublisher.EVERY_FRAME;
+            micActivityAggregation = MicLevelPublisher.Aggregation.MEAN;
+            sampleRate = 16000;
+            vadFrameMs = 20;
+            vadMode = Vad.Mode.VERY_AGGRESSIVE;
+            vadPreGate = false;
+            adaptiveVad = false;
+            captureSampleRate = 0;
+            captureChannels = 1;
+            streamingUpload = false;
+            pipelineThreading = AudioPipeline.Threading.SINGLE;
+            partialResultIntervalMs = 0;
         }
 
         public Builder withStoreSamples(boolean storeSamples) {
@@ -98,7 +263,194 @@ public class SpeechServiceSettings implements Serializable {
             return this;
         }
 
+        public Builder withMicLevelMode(@NonNull MicLevelMeter.Mode micLevelMode){
+            this.micLevelMode = micLevelMode;
+            return this;
+        }
+
+        /**
+         * Continuous silence after speech that ends the utterance.
+         */
+        public Builder withHangoverMs(int hangoverMs){
+            if (hangoverMs < 0) {
+                throw new IllegalArgumentException("Negative hangover: " + hangoverMs + " ms");
+            }
+            this.hangoverMs = hangoverMs;
+            return this;
+        }
+
+        /**
+         * Amount of voiced audio needed before the input counts as speech.
+         */
+        public Builder withMinSpeechMs(int minSpeechMs){
+            if (minSpeechMs < 0) {
+                throw new IllegalArgumentException("Negative minimum speech: " + minSpeechMs + " ms");
+            }
+            this.minSpeechMs = minSpeechMs;
+            return this;
+        }
+
+        /**
+         * Audio captured before giving up, with or without speech.
+         */
+        public Builder withMaxUtteranceMs(int maxUtteranceMs){
+            if (maxUtteranceMs <= 0) {
+                throw new IllegalArgumentException("Maximum utterance must be positive: " +
+                        maxUtteranceMs + " ms");
+            }
+            this.maxUtteranceMs = maxUtteranceMs;
+            return this;
+        }
+
+        /**
+         * What happens when the local decoder or a pipeline stage falls behind and its audio
+         * buffer fills up.
+         */
+        public Builder withAudioOverflowPolicy(@NonNull ShortRingBuffer.OverflowPolicy policy){
+            this.audioOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * When greater than 0 the session starts armed: the mic is open but the encoder isn't,
+         * so nothing is encoded or uploaded until the endpointer hears the minimum amount of
+         * speech, see {@link #withMinSpeechMs}. Then the last {@code preRollMs} of audio before
+         * that speech is sent along.
+         */
+        public Builder withPreRollMs(int preRollMs){
+            if (preRollMs < 0) {
+                throw new IllegalArgumentException("Negative pre-roll: " + preRollMs + " ms");
+            }
+            this.preRollMs = preRollMs;
+            return this;
+        }
+
+        public Builder withGainMode(@NonNull GainControl.Mode gainMode){
+            this.gainMode = gainMode;
+            return this;
+        }
+
+        /**
+         * How often {@link SpeechResultCallback#onMicActivity(double)} is called, in Hz.
+         * {@link MicLevelPublisher#EVERY_FRAME} by default, {@link MicLevelPublisher#DISABLED}
+         * turns it off.
+         */
+        public Builder withMicActivityRate(int micActivityRate){
+            this.micActivityRate = micActivityRate;
+            return this;
+        }
+
+        public Builder withMicActivityAggregation(@NonNull MicLevelPublisher.Aggregation aggregation){
+            this.micActivityAggregation = aggregation;
+            return this;
+        }
+
+        /**
+         * Capture rate, 8000, 16000, 32000 or 48000 Hz. Audio is captured, gated and encoded at
+         * this rate without resampling first. DeepSpeech models only take 16000 Hz.
+         */
+        public Builder withSampleRate(int sampleRate){
+            if (!Vad.isValidSampleRate(sampleRate)) {
+                throw new IllegalArgumentException("Unsupported sample rate: " + sampleRate);
+            }
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * Length of the frames the capture loop reads and the VAD classifies, 10, 20 or 30 ms.
+         * Longer frames mean fewer native calls but coarser end of speech detection.
+         */
+        public Builder withVadFrameMs(int vadFrameMs){
+            if (vadFrameMs != 10 && vadFrameMs != 20 && vadFrameMs != 30) {
+                throw new IllegalArgumentException("Unsupported VAD frame length: " + vadFrameMs + " ms");
+            }
+            this.vadFrameMs = vadFrameMs;
+            return this;
+        }
+
+        public Builder withVadMode(@NonNull Vad.Mode vadMode){
+            this.vadMode = vadMode;
+            return this;
+        }
+
+        /**
+         * Skips the VAD on frames an energy check against the noise floor already shows to be
+         * silence, which saves CPU while listening in a quiet room.
+         */
+        public Builder withVadPreGate(boolean vadPreGate){
+            this.vadPreGate = vadPreGate;
+            return this;
+        }
+
+        /**
+         * Adapts the VAD mode and the hangover to the background noise measured during the
+         * session, see {@link com.mozilla.speechlibrary.audio.VadAdaptation}. The configured
+         * ones are used in normal conditions.
+         */
+        public Builder withAdaptiveVad(boolean adaptiveVad){
+            this.adaptiveVad = adaptiveVad;
+            return this;
+        }
+
+        /**
+         * Format the microphone is opened with, converted to mono at the sample rate in native
+         * code, see {@link NativeResampler}. Capturing at the device's native rate, 48000 Hz
+         * on most devices, skips Android's own resampling. Defaults to mono at the sample rate.
+         */
+        public Builder withCaptureFormat(int captureSampleRate, int captureChannels){
+            this.captureSampleRate = captureSampleRate;
+            this.captureChannels = captureChannels;
+            return this;
+        }
+
+        /**
+         * Uploads the audio with chunked transfer encoding while the user is speaking instead
+         * of after the end of speech, so only the last Ogg page is left to send then. Not used
+         * with a {@code GeckoWebExecutor}, whose requests take the whole body at once.
+         */
+        public Builder withStreamingUpload(boolean streamingUpload){
+            this.streamingUpload = streamingUpload;
+            return this;
+        }
+
+        /**
+         * Which stages of the capture loop get their own thread. With anything but
+         * {@link AudioPipeline.Threading#SINGLE} the capture thread only reads the microphone and
+         * hands the frames off, so a slow encode can't make it miss a read. The queues between
+         * the threads follow {@link #withAudioOverflowPolicy}.
+         */
+        public Builder withPipelineThreading(@NonNull AudioPipeline.Threading threading){
+            this.pipelineThreading = threading;
+            return this;
+        }
+
+        /**
+         * When greater than 0 the local decoder reports the text so far through
+         * {@link SpeechResultCallback#onPartialResult} every {@code partialResultIntervalMs} of
+         * decoded audio. Each partial result decodes everything fed so far again, so shorter
+         * intervals cost more CPU. Not supported by the network clients.
+         */
+        public Builder withPartialResultIntervalMs(int partialResultIntervalMs){
+            if (partialResultIntervalMs < 0) {
+                throw new IllegalArgumentException("Negative partial result interval: " +
+                        partialResultIntervalMs + " ms");
+            }
+            this.partialResultIntervalMs = partialResultIntervalMs;
+            return this;
+        }
+
         public SpeechServiceSettings build(){
+            int capture = captureSampleRate > 0 ? captureSampleRate : sampleRate;
+            if ((capture != sampleRate || captureChannels != 1) &&
+                    !NativeResampler.isSupported(capture, captureChannels, sampleRate)) {
+                throw new IllegalArgumentException("Can't convert " + capture + " Hz, " +
+                        captureChannels + " channels capture to " + sampleRate + " Hz");
+            }
+            if (useDeepSpeech && sampleRate != ModelCache.SAMPLE_RATE) {
+                throw new IllegalArgumentException("DeepSpeech needs " + ModelCache.SAMPLE_RATE +
+                        " Hz audio, not " + sampleRate);
+            }
             return new SpeechServiceSettings(this);
         }
     }
@@ -1,13 +1,430 @@
 package com.mozilla.speechlibrary;
 
-public class Vad {
+import androidx.annotation.NonNull;
 
-    static {
-        System.loadLibrary("webrtc_jni");
+import com.mozilla.speechlibrary.audio.WebRtcVadCore;
+
+import java.io.Closeable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * WebRTC voice activity detector. Every instance owns its own native state, so several can run
+ * at once, e.g. one per file on a thread pool. Calls on one instance are serialized.
+ * <p>
+ * Call {@link #close()} (or {@link #stop()}) when done. An instance that is dropped without
+ * being closed has its native state freed the next time a {@code Vad} is started.
+ * <p>
+ * {@link Implementation#JAVA} runs the same fixed point code ported to Java, with identical
+ * decisions and scores. It doesn't need {@code libwebrtc_jni.so}, so it also works in JVM unit
+ * tests and outside of Android.
+ */
+public class Vad implements Closeable {
+
+    /**
+     * WebRTC operating modes, more aggressive ones report voice less often.
+     */
+    public enum Mode {
+        QUALITY,
+        LOW_BITRATE,
+        AGGRESSIVE,
+        VERY_AGGRESSIVE
+    }
+
+    public enum Implementation {
+        NATIVE,
+        JAVA
+    }
+
+    private static final int[] SAMPLE_RATES = { 8000, 16000, 32000, 48000 };
+
+    private static final ReferenceQueue<Vad> sQueue = new ReferenceQueue<>();
+    // Keeps the references reachable until their native state is freed
+    private static final Set<NativeRef> sRefs = Collections.synchronizedSet(new HashSet<>());
+
+    private final int mSampleRate;
+    private Mode mMode;
+    private final Implementation mImplementation;
+    private NativeRef mRef;
+    private WebRtcVadCore mCore;
+    private short[] mDirectSamples;
+    private int mLastResult;
+
+    public Vad() {
+        this(16000, Mode.VERY_AGGRESSIVE);
+    }
+
+    /**
+     * @param sampleRate 8000, 16000, 32000 or 48000 Hz.
+     */
+    public Vad(int sampleRate, @NonNull Mode mode) {
+        this(sampleRate, mode, Implementation.NATIVE);
+    }
+
+    public Vad(int sampleRate, @NonNull Mode mode, @NonNull Implementation implementation) {
+        if (!isValidSampleRate(sampleRate)) {
+            throw new IllegalArgumentException("Unsupported sample rate: " + sampleRate);
+        }
+
+        mSampleRate = sampleRate;
+        mMode = mode;
+        mImplementation = implementation;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @NonNull
+    synchronized
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     * Changes the mode, of a started detector too. Unlike restarting it, this keeps what the
+     * detector has learnt about the noise.
+     *
+     * @return 0 on success, -1 if the mode couldn't be set.
+     */
+    synchronized
+    public int setMode(@NonNull Mode mode) {
+        int retVal = 0;
+        if (mCore != null) {
+            retVal = mCore.setMode(mode.ordinal());
+
+        } else if (mRef != null) {
+            retVal = nativeSetMode(mRef.mHandle, mode.ordinal());
+        }
+
+        if (retVal == 0) {
+            mMode = mode;
+        }
+        return retVal;
+    }
+
+    @NonNull
+    public Implementation getImplementation() {
+        return mImplementation;
+    }
+
+    public static boolean isValidSampleRate(int sampleRate) {
+        for (int rate : SAMPLE_RATES) {
+            if (rate == sampleRate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the detector takes frames of {@code frameLength} samples at
+     * {@code sampleRate}, i.e. 10, 20 or 30 ms.
+     */
+    public static boolean isValidFrameLength(int sampleRate, int frameLength) {
+        return isValidSampleRate(sampleRate) && frameLength > 0 &&
+                (frameLength * 100 == sampleRate ||
+                        frameLength * 50 == sampleRate ||
+                        frameLength * 100 == sampleRate * 3);
+    }
+
+    /**
+     * Allocates the native state, or the Java one for {@link Implementation#JAVA}.
+     *
+     * @return 0 on success, a negative value if the detector couldn't be created or initialized.
+     */
+    synchronized
+    public int start() {
+        freeUnreachable();
+
+        if (mImplementation == Implementation.JAVA) {
+            if (mCore == null) {
+                mCore = new WebRtcVadCore();
+            }
+            mCore.init();
+            return mCore.setMode(mMode.ordinal());
+        }
+
+        NativeLibrary.load();
+        if (mRef != null) {
+            return nativeInit(mRef.mHandle, mMode.ordinal());
+        }
+
+        long handle = nativeCreate();
+        if (handle == 0) {
+            return -1;
+        }
+
+        int retVal = nativeInit(handle, mMode.ordinal());
+        if (retVal < 0) {
+            nativeFree(handle);
+            return retVal;
+        }
+
+        mRef = new NativeRef(this, handle);
+        sRefs.add(mRef);
+
+        return 0;
+    }
+
+    /**
+     * @param x 10, 20 or 30 ms of audio at the detector's sample rate.
+     * @return 1 for voice, 0 for no voice and -1 on error, including when the detector isn't started.
+     */
+    public int feed(@NonNull short[] x, int n) {
+        return feed(x, 0, n);
+    }
+
+    synchronized
+    public int feed(@NonNull short[] x, int offset, int n) {
+        if (offset < 0 || n < 0 || offset + n > x.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", n " + n + ", length " + x.length);
+        }
+        if (mCore != null) {
+            mLastResult = mCore.process(mSampleRate, x, offset, n);
+
+        } else if (mRef != null) {
+            mLastResult = nativeFeed(mRef.mHandle, mSampleRate, x, offset, n);
+
+        } else {
+            return -1;
+        }
+        return mLastResult;
+    }
+
+    /**
+     * Same as {@link #feed(short[], int, int)}, and also fills {@code scores} with what the
+     * decision was based on. The scores are left unchanged when -1 is returned.
+     */
+    synchronized
+    public int feed(@NonNull short[] x, int offset, int n, @NonNull VadScores scores) {
+        if (offset < 0 || n < 0 || offset + n > x.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", n " + n + ", length " + x.length);
+        }
+        if (mCore != null) {
+            mLastResult = mCore.process(mSampleRate, x, offset, n);
+            if (mLastResult >= 0) {
+                mCore.getScores(scores.mValues);
+            }
+
+        } else if (mRef != null) {
+            mLastResult = nativeFeedScored(mRef.mHandle, mSampleRate, x, offset, n, scores.mValues);
+
+        } else {
+            return -1;
+        }
+        return mLastResult;
+    }
+
+    /**
+     * Feeds {@code n} samples from the buffer's position without copying them. The position
+     * isn't changed.
+     *
+     * @param buffer a direct buffer in native byte order.
+     */
+    public int feed(@NonNull ShortBuffer buffer, int n) {
+        if (!buffer.isDirect() || buffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Buffer must be direct and in native byte order");
+        }
+        if (n < 0 || n > buffer.remaining()) {
+            throw new IndexOutOfBoundsException("n " + n + ", remaining " + buffer.remaining());
+        }
+
+        return feedDirect(buffer, buffer.position() * 2, n);
+    }
+
+    /**
+     * Same as {@link #feed(ShortBuffer, int)} for 16 bit native order samples, as filled by
+     * {@code AudioRecord.read(ByteBuffer, int)}.
+     *
+     * @param buffer a direct buffer.
+     * @param n      number of samples, not bytes.
+     */
+    public int feed(@NonNull ByteBuffer buffer, int n) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        if (n < 0 || n * 2 > buffer.remaining()) {
+            throw new IndexOutOfBoundsException("n " + n + ", remaining bytes " + buffer.remaining());
+        }
+
+        return feedDirect(buffer, buffer.position(), n);
+    }
+
+    synchronized
+    private int feedDirect(@NonNull Buffer buffer, int byteOffset, int n) {
+        if (mCore != null) {
+            if (!isValidFrameLength(mSampleRate, n)) {
+                mLastResult = -1;
+                return mLastResult;
+            }
+            readSamples(buffer, byteOffset, n);
+            mLastResult = mCore.process(mSampleRate, mDirectSamples, 0, n);
+
+        } else if (mRef != null) {
+            mLastResult = nativeFeedDirect(mRef.mHandle, mSampleRate, buffer, byteOffset, n);
+
+        } else {
+            return -1;
+        }
+        return mLastResult;
+    }
+
+    private void readSamples(@NonNull Buffer buffer, int byteOffset, int n) {
+        if (mDirectSamples == null || mDirectSamples.length < n) {
+            mDirectSamples = new short[n];
+        }
+
+        if (buffer instanceof ShortBuffer) {
+            ShortBuffer samples = (ShortBuffer) buffer;
+            for (int i = 0; i < n; i++) {
+                mDirectSamples[i] = samples.get(byteOffset / 2 + i);
+            }
+
+        } else {
+            ByteBuffer bytes = (ByteBuffer) buffer;
+            boolean swap = bytes.order() != ByteOrder.nativeOrder();
+            for (int i = 0; i < n; i++) {
+                short sample = bytes.getShort(byteOffset + i * 2);
+                mDirectSamples[i] = swap ? Short.reverseBytes(sample) : sample;
+            }
+        }
+    }
+
+    /**
+     * Runs the detector over consecutive frames of a long block in a single native call, e.g.
+     * to segment recorded audio. Trailing samples that don't fill a frame are left out.
+     *
+     * @param frameLength samples per frame, 10, 20 or 30 ms worth.
+     * @param decisions   receives the result of every frame, 1 for voice, 0 for no voice and -1
+     *                    on error. Must hold at least {@code length / frameLength} entries.
+     * @return the number of frames processed, or -1 if the detector isn't started.
+     */
+    synchronized
+    public int feedFrames(@NonNull short[] pcm, int offset, int length, int frameLength,
+                          @NonNull byte[] decisions) {
+        if (!isValidFrameLength(mSampleRate, frameLength)) {
+            throw new IllegalArgumentException("Unsupported frame length: " + frameLength);
+        }
+        if (offset < 0 || length < 0 || offset + length > pcm.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", pcm " + pcm.length);
+        }
+        int frames = length / frameLength;
+        if (decisions.length < frames) {
+            throw new IndexOutOfBoundsException("decisions " + decisions.length + ", frames " + frames);
+        }
+        if (mCore == null && mRef == null) {
+            return -1;
+        }
+        if (frames == 0) {
+            return 0;
+        }
+
+        int done;
+        if (mCore != null) {
+            for (int i = 0; i < frames; i++) {
+                decisions[i] = (byte) mCore.process(mSampleRate, pcm, offset + i * frameLength, frameLength);
+            }
+            done = frames;
+
+        } else {
+            done = nativeFeedFrames(mRef.mHandle, mSampleRate, pcm, offset, frameLength, frames, decisions);
+        }
+        if (done > 0) {
+            mLastResult = decisions[done - 1];
+        }
+        return done;
+    }
+
+    /**
+     * Same as {@link #feedFrames(short[], int, int, int, byte[])} over the whole array.
+     */
+    @NonNull
+    public byte[] feedFrames(@NonNull short[] pcm, int frameLength) {
+        byte[] decisions = new byte[pcm.length / Math.max(frameLength, 1)];
+        if (feedFrames(pcm, 0, pcm.length, frameLength, decisions) < 0) {
+            Arrays.fill(decisions, (byte) -1);
+        }
+        return decisions;
+    }
+
+    synchronized
+    protected int isSilence() {
+        return mLastResult;
+    }
+
+    synchronized
+    public int stop() {
+        if (mCore != null) {
+            mCore = null;
+            return 0;
+        }
+        if (mRef == null) {
+            return -1;
+        }
+
+        mRef.free();
+        mRef = null;
+
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private static void freeUnreachable() {
+        NativeRef ref;
+        while ((ref = (NativeRef) sQueue.poll()) != null) {
+            ref.free();
+        }
+    }
+
+    // Loaded on first use so the Java implementation works without the library
+    private static class NativeLibrary {
+
+        static {
+            System.loadLibrary("webrtc_jni");
+        }
+
+        static void load() {
+        }
+    }
+
+    private static class NativeRef extends PhantomReference<Vad> {
+
+        private final long mHandle;
+
+        NativeRef(Vad vad, long handle) {
+            super(vad, sQueue);
+            mHandle = handle;
+        }
+
+        void free() {
+            if (sRefs.remove(this)) {
+                nativeFree(mHandle);
+            }
+            clear();
+        }
     }
 
-    public native int start();
-    public native int feed(short[] x, int n);
-    protected native int isSilence();
-    public native int stop();
+    private static native long nativeCreate();
+    private static native int nativeInit(long handle, int mode);
+    private static native void nativeFree(long handle);
+    private static native int nativeSetMode(long handle, int mode);
+    private static native int nativeFeed(long handle, int sampleRate, short[] x, int offset, int n);
+    private static native int nativeFeedScored(long handle, int sampleRate, short[] x, int offset, int n,
+                                               int[] scores);
+    private static native int nativeFeedDirect(long handle, int sampleRate, Buffer buffer, int byteOffset, int n);
+    private static native int nativeFeedFrames(long handle, int sampleRate, short[] pcm, int offset,
+                                               int frameLength, int frames, byte[] decisions);
 }
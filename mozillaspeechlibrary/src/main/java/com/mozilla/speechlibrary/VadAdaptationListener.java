@@ -0,0 +1,23 @@
+package com.mozilla.speechlibrary;
+
+import androidx.annotation.NonNull;
+
+import com.mozilla.speechlibrary.audio.VadAdaptation;
+
+/**
+ * Diagnostics of {@link SpeechServiceSettings.Builder#withAdaptiveVad(boolean)}, called on the
+ * callback executor every time a session switches VAD settings.
+ */
+public interface VadAdaptationListener {
+
+    /**
+     * @param environment what the noise estimates were classified as.
+     * @param mode        the VAD mode used from now on.
+     * @param hangoverMs  the end of speech hangover used from now on.
+     * @param noiseDbfs   the noise floor estimate.
+     * @param snrDb       the speech to noise ratio estimate, NaN before any voice.
+     * @param timeMs      audio time into the session at which the switch happened.
+     */
+    void onVadAdaptation(@NonNull VadAdaptation.Environment environment, @NonNull Vad.Mode mode,
+                         int hangoverMs, double noiseDbfs, double snrDb, long timeMs);
+}
@@ -0,0 +1,73 @@
+package com.mozilla.speechlibrary;
+
+/**
+ * What a {@link Vad} decision was based on, filled by
+ * {@link Vad#feed(short[], int, int, VadScores)}. Reuse one instance across frames, nothing is
+ * allocated per frame.
+ * <p>
+ * The detector works on six bands between 80 Hz and 4 kHz, each modelled by two Gaussians for
+ * noise and two for speech. Frames with next to no energy skip the models, their likelihood
+ * ratio is 0.
+ */
+public class VadScores {
+
+    public static final int BANDS = 6;
+    public static final int GAUSSIANS = 2;
+
+    // Layout shared with webrtc_jni.c
+    static final int LLR = 0;
+    static final int THRESHOLD = 1;
+    static final int TOTAL_POWER = 2;
+    static final int FEATURES = 3;
+    static final int NOISE_MEANS = FEATURES + BANDS;
+    static final int SPEECH_MEANS = NOISE_MEANS + BANDS * GAUSSIANS;
+    static final int SIZE = SPEECH_MEANS + BANDS * GAUSSIANS;
+
+    final int[] mValues = new int[SIZE];
+
+    /**
+     * Spectrum weighted sum of the per band log2 likelihood ratios of speech over noise. The
+     * frame is voiced when it reaches {@link #getThreshold()}, when a single band is confident
+     * enough or during the hangover after speech. The distance to the threshold is a measure
+     * of confidence.
+     */
+    public int getLogLikelihoodRatio() {
+        return mValues[LLR];
+    }
+
+    /**
+     * Threshold of {@link #getLogLikelihoodRatio()} for the current mode and frame length.
+     */
+    public int getThreshold() {
+        return mValues[THRESHOLD];
+    }
+
+    /**
+     * Approximate frame energy, only tracked until it passes 10. 10 or below means the frame
+     * was too quiet and the models were skipped.
+     */
+    public int getTotalPower() {
+        return mValues[TOTAL_POWER];
+    }
+
+    /**
+     * Energy of a band in dB, the feature the models are evaluated on.
+     */
+    public float getFeature(int band) {
+        return mValues[FEATURES + band] / 16f;
+    }
+
+    /**
+     * Mean of a noise Gaussian, in dB. Adapts to the background while there is no speech.
+     */
+    public float getNoiseMean(int band, int gaussian) {
+        return mValues[NOISE_MEANS + gaussian * BANDS + band] / 128f;
+    }
+
+    /**
+     * Mean of a speech Gaussian, in dB.
+     */
+    public float getSpeechMean(int band, int gaussian) {
+        return mValues[SPEECH_MEANS + gaussian * BANDS + band] / 128f;
+    }
+}
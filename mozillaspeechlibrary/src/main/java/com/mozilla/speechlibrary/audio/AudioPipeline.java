@@ -0,0 +1,299 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The per frame work of a session as three stages:
+ * <ul>
+ * <li>{@link Stage#CAPTURE} reads frames from the {@link AudioSource}.</li>
+ * <li>{@link Stage#ANALYSIS} runs the VAD, the endpointer and the DSP on whole frames and
+ * decides what gets encoded, see {@link Analysis}.</li>
+ * <li>{@link Stage#ENCODE} hands the audio to the encoder or decoder, see {@link Sink}.</li>
+ * </ul>
+ * {@link Threading} decides which stages share a thread. Stages on different threads are
+ * connected by bounded {@link ShortRingBuffer}s, so a slow encode doesn't delay the next read
+ * of the microphone. The input queue of every stage is measured, see {@link #getMaxQueueSize}.
+ */
+public class AudioPipeline {
+
+    public enum Threading {
+        /** Every stage on the calling thread, one frame at a time. */
+        SINGLE,
+        /** Capture alone on the calling thread, analysis and encoding on a worker thread. */
+        CAPTURE,
+        /** Capture on the calling thread, analysis and encoding on a worker thread each. */
+        PER_STAGE
+    }
+
+    public enum Stage {
+        CAPTURE,
+        ANALYSIS,
+        ENCODE
+    }
+
+    public interface Analysis {
+        /**
+         * Processes a frame, which may be modified, and writes what should be encoded to
+         * {@code out}. Frames are whole except maybe the last one.
+         *
+         * @return false to end the session.
+         */
+        boolean process(@NonNull short[] frame, int len, @NonNull Sink out);
+    }
+
+    public interface Sink {
+        /**
+         * The buffer is reused as soon as this call returns.
+         */
+        void write(@NonNull short[] buffer, int pos, int len);
+    }
+
+    private static final int STAGES = Stage.values().length;
+
+    private final Threading mThreading;
+    private final int mFrameLength;
+    private final int mQueueCapacity;
+    private final ShortRingBuffer.OverflowPolicy mOverflowPolicy;
+    private final ThreadFactory mThreadFactory;
+    private final AtomicLongArray mFrames = new AtomicLongArray(STAGES);
+    private final AtomicLongArray mBusyNanos = new AtomicLongArray(STAGES);
+    private final ShortRingBuffer[] mQueues = new ShortRingBuffer[STAGES];
+    private volatile boolean mDone;
+    private volatile Throwable mError;
+
+    /**
+     * @param queueCapacity samples each queue holds before the overflow policy applies.
+     * @param threadFactory creates the worker threads, to set their priority.
+     */
+    public AudioPipeline(@NonNull Threading threading,
+                         int frameLength,
+                         int queueCapacity,
+                         @NonNull ShortRingBuffer.OverflowPolicy overflowPolicy,
+                         @NonNull ThreadFactory threadFactory) {
+        mThreading = threading;
+        mFrameLength = frameLength;
+        mQueueCapacity = queueCapacity;
+        mOverflowPolicy = overflowPolicy;
+        mThreadFactory = threadFactory;
+    }
+
+    @NonNull
+    public Threading getThreading() {
+        return mThreading;
+    }
+
+    /**
+     * Runs the session on the calling thread until the source ends, {@link Analysis#process}
+     * returns false or {@link #stop()} is called, and until the worker threads are done with
+     * what was captured.
+     *
+     * @throws Exception the first error of any stage.
+     */
+    public void run(@NonNull AudioSource source,
+                    @NonNull Analysis analysis,
+                    @NonNull Sink sink) throws Exception {
+        Sink encode = (buffer, pos, len) -> {
+            long start = System.nanoTime();
+            sink.write(buffer, pos, len);
+            account(Stage.ENCODE, start);
+        };
+
+        if (mThreading == Threading.SINGLE) {
+            short[] frame = new short[mFrameLength];
+            capture(source, frame, (buffer, pos, len) -> {
+                if (!analyze(analysis, buffer, len, encode)) {
+                    mDone = true;
+                }
+            });
+
+        } else {
+            ShortRingBuffer analysisQueue = new ShortRingBuffer(mQueueCapacity, mOverflowPolicy);
+            mQueues[Stage.ANALYSIS.ordinal()] = analysisQueue;
+
+            Thread encodeThread = null;
+            Sink analysisOut = encode;
+            if (mThreading == Threading.PER_STAGE) {
+                ShortRingBuffer encodeQueue = new ShortRingBuffer(mQueueCapacity, mOverflowPolicy);
+                mQueues[Stage.ENCODE.ordinal()] = encodeQueue;
+                analysisOut = encodeQueue::write;
+                encodeThread = startStage(Stage.ENCODE, () -> drain(encodeQueue, encode), encodeQueue);
+            }
+
+            Sink out = analysisOut;
+            Thread analysisThread = startStage(Stage.ANALYSIS, () -> {
+                short[] frame = new short[mFrameLength];
+                int len;
+                while (!mDone && (len = analysisQueue.readFully(frame, 0, frame.length)) > 0) {
+                    if (!analyze(analysis, frame, len, out)) {
+                        mDone = true;
+                    }
+                }
+            }, analysisQueue, mQueues[Stage.ENCODE.ordinal()]);
+
+            try {
+                capture(source, new short[mFrameLength], analysisQueue::write);
+
+            } catch (Exception e) {
+                fail(e);
+
+            } finally {
+                analysisQueue.close();
+                analysisThread.join();
+                if (encodeThread != null) {
+                    encodeThread.join();
+                }
+            }
+        }
+
+        Throwable error = mError;
+        if (error instanceof Exception) {
+            throw (Exception) error;
+
+        } else if (error != null) {
+            throw (Error) error;
+        }
+    }
+
+    /**
+     * Ends the session after the frame in progress.
+     */
+    public void stop() {
+        mDone = true;
+    }
+
+    private void capture(AudioSource source, short[] frame, Sink out) throws Exception {
+        while (!mDone) {
+            int len = source.read(frame, 0, frame.length);
+            if (len < 0) {
+                break;
+            }
+            // Nothing yet, e.g. a resampler still filling its first output frame
+            if (len == 0) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            out.write(frame, 0, len);
+            account(Stage.CAPTURE, start);
+        }
+    }
+
+    private boolean analyze(Analysis analysis, short[] frame, int len, Sink out) {
+        long start = System.nanoTime();
+        boolean more = analysis.process(frame, len, out);
+        account(Stage.ANALYSIS, start);
+        return more;
+    }
+
+    private void drain(ShortRingBuffer queue, Sink out) {
+        short[] buffer = new short[mFrameLength];
+        int len;
+        while ((len = queue.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, len);
+        }
+    }
+
+    // The stage closes its input when it ends so the stage before it can't block on it, and
+    // its output so the stage after it sees the end.
+    private Thread startStage(Stage stage, Runnable body, ShortRingBuffer input, ShortRingBuffer output) {
+        Thread thread = mThreadFactory.newThread(() -> {
+            try {
+                body.run();
+
+            } catch (Throwable t) {
+                fail(t);
+
+            } finally {
+                input.close();
+                if (output != null) {
+                    output.close();
+                }
+            }
+        });
+        thread.setName("AudioPipeline " + stage.name().toLowerCase());
+        thread.start();
+        return thread;
+    }
+
+    private Thread startStage(Stage stage, Runnable body, ShortRingBuffer input) {
+        return startStage(stage, body, input, null);
+    }
+
+    private void fail(Throwable t) {
+        if (mError == null) {
+            mError = t;
+        }
+        mDone = true;
+        for (ShortRingBuffer queue : mQueues) {
+            if (queue != null) {
+                queue.close();
+            }
+        }
+    }
+
+    private void account(Stage stage, long start) {
+        mFrames.incrementAndGet(stage.ordinal());
+        mBusyNanos.addAndGet(stage.ordinal(), System.nanoTime() - start);
+    }
+
+    /**
+     * Number of frames or writes the stage processed.
+     */
+    public long getFrames(@NonNull Stage stage) {
+        return mFrames.get(stage.ordinal());
+    }
+
+    /**
+     * Time the stage spent processing. For {@link Stage#CAPTURE} that's the time between
+     * reads, which includes the other stages when they run on the same thread.
+     */
+    public long getBusyNanos(@NonNull Stage stage) {
+        return mBusyNanos.get(stage.ordinal());
+    }
+
+    /**
+     * Samples waiting for the stage, 0 for a stage without a queue.
+     */
+    public int getQueueSize(@NonNull Stage stage) {
+        ShortRingBuffer queue = mQueues[stage.ordinal()];
+        return queue != null ? queue.size() : 0;
+    }
+
+    public int getMaxQueueSize(@NonNull Stage stage) {
+        ShortRingBuffer queue = mQueues[stage.ordinal()];
+        return queue != null ? queue.getMaxSize() : 0;
+    }
+
+    public int getQueueCapacity(@NonNull Stage stage) {
+        ShortRingBuffer queue = mQueues[stage.ordinal()];
+        return queue != null ? queue.getCapacity() : 0;
+    }
+
+    /**
+     * Samples the stage never got because its queue overflowed.
+     */
+    public long getDropped(@NonNull Stage stage) {
+        ShortRingBuffer queue = mQueues[stage.ordinal()];
+        return queue != null ? queue.getDropped() : 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(mThreading.name());
+        for (Stage stage : Stage.values()) {
+            text.append(", ").append(stage.name().toLowerCase())
+                    .append(' ').append(getFrames(stage)).append(" frames in ")
+                    .append(getBusyNanos(stage) / 1000000).append(" ms");
+            if (mQueues[stage.ordinal()] != null) {
+                text.append(" queue max ").append(getMaxQueueSize(stage))
+                        .append('/').append(getQueueCapacity(stage))
+                        .append(" dropped ").append(getDropped(stage));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.mozilla.speechlibrary.audio;
+
+import android.media.AudioRecord;
+
+import com.github.axet.audiolibrary.encoders.Sound;
+
+public class AudioRecordSource implements AudioSource {
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private AudioRecord mRecorder;
+
+    public AudioRecordSource(int sampleRate, int channels) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannels() {
+        return mChannels;
+    }
+
+    @Override
+    public void start() {
+        mRecorder = Sound.getAudioRecord(mChannels, mSampleRate);
+        mRecorder.startRecording();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int len) {
+        AudioRecord recorder = mRecorder;
+        if (recorder == null) {
+            return -1;
+        }
+        return recorder.read(buffer, offset, len);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mRecorder != null) {
+            try {
+                mRecorder.stop();
+
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+
+            } finally {
+                mRecorder.release();
+                mRecorder = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.mozilla.speechlibrary.audio;
+
+import java.io.IOException;
+
+/**
+ * Provides interleaved 16 bit PCM to the recognition pipeline. {@link #read} is called from the
+ * capture thread and blocks like {@code AudioRecord.read}, {@link #stop()} may be called from
+ * any thread.
+ */
+public interface AudioSource {
+
+    int getSampleRate();
+
+    int getChannels();
+
+    void start() throws IOException;
+
+    /**
+     * Reads up to {@code len} samples into {@code buffer}.
+     *
+     * @return the number of samples read, 0 if none are available yet, or a negative value once
+     * the source is exhausted or stopped.
+     */
+    int read(short[] buffer, int offset, int len) throws IOException;
+
+    void stop();
+}
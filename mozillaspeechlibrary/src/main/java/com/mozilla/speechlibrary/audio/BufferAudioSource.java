@@ -0,0 +1,35 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Plays back PCM held in memory. Every {@link #start()} rewinds to the beginning.
+ */
+public class BufferAudioSource extends PacedAudioSource {
+
+    private final short[] mSamples;
+    private int mPosition;
+
+    public BufferAudioSource(@NonNull short[] samples, int sampleRate, int channels, @NonNull Pacing pacing) {
+        super(sampleRate, channels, pacing);
+
+        mSamples = samples;
+    }
+
+    @Override
+    void open() {
+        mPosition = 0;
+    }
+
+    @Override
+    int readSamples(short[] buffer, int offset, int len) {
+        int read = Math.min(len, mSamples.length - mPosition);
+        System.arraycopy(mSamples, mPosition, buffer, offset, read);
+        mPosition += read;
+        return read;
+    }
+
+    @Override
+    void close() {
+    }
+}
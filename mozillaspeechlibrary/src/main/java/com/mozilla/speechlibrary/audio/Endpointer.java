@@ -0,0 +1,144 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides when an utterance starts and ends from per frame VAD decisions. Time is measured in
+ * samples fed, not wall clock, so the same audio always gives the same result and recorded
+ * sessions can be replayed as fast as the VAD runs.
+ */
+public class Endpointer {
+
+    public enum State {
+        /** No speech yet. */
+        LISTENING,
+        /** At least the minimum amount of speech has been heard. */
+        SPEECH,
+        /** Speech followed by the hangover of continuous silence. */
+        END_OF_SPEECH,
+        /** Maximum utterance length reached after speech was heard. */
+        MAX_UTTERANCE,
+        /** Maximum utterance length reached without enough speech. */
+        NO_VOICE
+    }
+
+    private final int mSampleRate;
+    private long mHangoverSamples;
+    private final long mMinSpeechSamples;
+    private final long mMaxUtteranceSamples;
+
+    private State mState;
+    private long mTotalSamples;
+    private long mSpeechSamples;
+    private long mSilenceSamples;
+    private long mSpeechStartSample;
+    private long mLastSpeechSample;
+
+    public Endpointer(int sampleRate, int hangoverMs, int minSpeechMs, int maxUtteranceMs) {
+        mSampleRate = sampleRate;
+        mHangoverSamples = msToSamples(hangoverMs);
+        mMinSpeechSamples = msToSamples(minSpeechMs);
+        mMaxUtteranceSamples = msToSamples(maxUtteranceMs);
+        reset();
+    }
+
+    /**
+     * Changes the hangover, e.g. when the environment changes. Silence already counted since
+     * the last voiced frame counts towards the new one.
+     */
+    public void setHangoverMs(int hangoverMs) {
+        mHangoverSamples = msToSamples(hangoverMs);
+    }
+
+    public void reset() {
+        mState = State.LISTENING;
+        mTotalSamples = 0;
+        mSpeechSamples = 0;
+        mSilenceSamples = 0;
+        mSpeechStartSample = -1;
+        mLastSpeechSample = -1;
+    }
+
+    /**
+     * Advances the state machine by one frame.
+     *
+     * @param voice the VAD decision for the frame.
+     * @param samples number of samples per channel in the frame.
+     */
+    @NonNull
+    public State feed(boolean voice, int samples) {
+        if (isDone()) {
+            return mState;
+        }
+
+        if (voice) {
+            if (mSpeechStartSample < 0) {
+                mSpeechStartSample = mTotalSamples;
+            }
+            mSpeechSamples += samples;
+            mSilenceSamples = 0;
+            mLastSpeechSample = mTotalSamples + samples;
+            if (mState == State.LISTENING && mSpeechSamples > mMinSpeechSamples) {
+                mState = State.SPEECH;
+            }
+
+        } else if (mState == State.SPEECH) {
+            mSilenceSamples += samples;
+            if (mSilenceSamples > mHangoverSamples) {
+                mState = State.END_OF_SPEECH;
+            }
+        }
+
+        mTotalSamples += samples;
+
+        if (!isDone() && mTotalSamples > mMaxUtteranceSamples) {
+            mState = mState == State.SPEECH ? State.MAX_UTTERANCE : State.NO_VOICE;
+        }
+
+        return mState;
+    }
+
+    @NonNull
+    public State getState() {
+        return mState;
+    }
+
+    public boolean isDone() {
+        return mState == State.END_OF_SPEECH
+                || mState == State.MAX_UTTERANCE
+                || mState == State.NO_VOICE;
+    }
+
+    public boolean hasSpeech() {
+        return mState == State.SPEECH
+                || mState == State.END_OF_SPEECH
+                || mState == State.MAX_UTTERANCE;
+    }
+
+    public long getTotalSamples() {
+        return mTotalSamples;
+    }
+
+    /**
+     * Sample offset of the first voiced frame, or -1.
+     */
+    public long getSpeechStartSample() {
+        return mSpeechStartSample;
+    }
+
+    /**
+     * Sample offset right after the last voiced frame, or -1. The end of speech latency is
+     * {@code getTotalSamples() - getLastSpeechSample()} once done.
+     */
+    public long getLastSpeechSample() {
+        return mLastSpeechSample;
+    }
+
+    public long samplesToMs(long samples) {
+        return samples * 1000 / mSampleRate;
+    }
+
+    private long msToSamples(int ms) {
+        return (long) ms * mSampleRate / 1000;
+    }
+}
@@ -0,0 +1,108 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Cheap energy check in front of the VAD that recognizes frames too quiet to be speech, so the
+ * VAD filterbank and GMM don't have to run on them. A frame is silence when its energy is close
+ * to the tracked noise floor and below an absolute ceiling.
+ * <p>
+ * Frames are only gated while the VAD's previous decision was 0: its hangover is over then and
+ * it would have returned 0 for a quiet frame as well. Nothing is gated during the first
+ * {@link #REFRESH_MS}, while the VAD learns the noise, and after that a frame is let through every
+ * {@link #REFRESH_MS} of gated audio so the VAD keeps adapting its noise model.
+ */
+public class EnergyGate {
+
+    /** Energy above the noise floor still taken as silence, 6 dB. */
+    public static final double MARGIN = 4;
+    /** Frames louder than this, in dBFS, always go to the VAD. */
+    public static final double MAX_SILENCE_DBFS = -50;
+    public static final int REFRESH_MS = 500;
+
+    private static final double FULL_SCALE = 32768.0 * 32768.0;
+    private static final double MIN_FLOOR = 1;
+
+    private final int mSampleRate;
+    private final double mMaxSilence;
+    private final long mRefreshSamples;
+
+    private double mNoiseFloor;
+    private long mTotalSamples;
+    private long mGatedSamples;
+    private long mFrames;
+    private long mSkippedFrames;
+
+    public EnergyGate(int sampleRate) {
+        mSampleRate = sampleRate;
+        mMaxSilence = FULL_SCALE * Math.pow(10, MAX_SILENCE_DBFS / 10);
+        mRefreshSamples = (long) sampleRate * REFRESH_MS / 1000;
+        reset();
+    }
+
+    public void reset() {
+        mNoiseFloor = mMaxSilence;
+        mTotalSamples = 0;
+        mGatedSamples = 0;
+        mFrames = 0;
+        mSkippedFrames = 0;
+    }
+
+    /**
+     * Updates the noise floor with the frame and tells whether it can skip the VAD.
+     *
+     * @param vadIdle whether the VAD's last decision was 0.
+     * @return true if the frame is silence, false if it should go to the VAD.
+     */
+    public boolean isSilence(@NonNull short[] x, int offset, int n, boolean vadIdle) {
+        mFrames++;
+        if (n <= 0) {
+            return false;
+        }
+
+        long sum = 0;
+        for (int i = offset; i < offset + n; i++) {
+            sum += x[i] * x[i];
+        }
+        double energy = (double) sum / n;
+
+        // Follows drops right away and rises by 3 dB a second, so the floor settles on the
+        // quietest recent frames and speech doesn't drag it up
+        if (energy < mNoiseFloor) {
+            mNoiseFloor = Math.max(energy, MIN_FLOOR);
+
+        } else {
+            mNoiseFloor = Math.min(mNoiseFloor * Math.pow(2, (double) n / mSampleRate), mMaxSilence);
+        }
+
+        mTotalSamples += n;
+        if (mTotalSamples <= mRefreshSamples || !vadIdle || energy > mMaxSilence || energy > mNoiseFloor * MARGIN) {
+            mGatedSamples = 0;
+            return false;
+        }
+
+        mGatedSamples += n;
+        if (mGatedSamples >= mRefreshSamples) {
+            mGatedSamples = 0;
+            return false;
+        }
+
+        mSkippedFrames++;
+        return true;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Number of frames classified as silence without running the VAD.
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    public double getNoiseFloorDbfs() {
+        return 10 * Math.log10(mNoiseFloor / FULL_SCALE);
+    }
+}
@@ -0,0 +1,149 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a 16 bit little endian WAV file, or a headerless PCM file of a known format.
+ */
+public class FileAudioSource extends PacedAudioSource {
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final File mFile;
+    private final long mDataOffset;
+    private final long mDataLength;
+    private volatile FileChannel mChannel;
+    private ByteBuffer mBytes;
+    private long mRemaining;
+
+    private FileAudioSource(@NonNull File file, int sampleRate, int channels, long dataOffset,
+                            long dataLength, @NonNull Pacing pacing) {
+        super(sampleRate, channels, pacing);
+
+        mFile = file;
+        mDataOffset = dataOffset;
+        mDataLength = dataLength;
+        mBytes = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads the sample rate and channel count from the WAV header.
+     */
+    @NonNull
+    public static FileAudioSource wav(@NonNull File file, @NonNull Pacing pacing) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            raf.readFully(header.array(), 0, 12);
+            if (header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")) {
+                throw new IOException("Not a WAV file: " + file);
+            }
+
+            int channels = 0;
+            int sampleRate = 0;
+            long position = 12;
+            while (position + 8 <= raf.length()) {
+                raf.seek(position);
+                raf.readFully(header.array(), 0, 8);
+                int id = header.getInt(0);
+                long size = header.getInt(4) & 0xFFFFFFFFL;
+                long body = position + 8;
+
+                if (id == fourCC("fmt ")) {
+                    raf.readFully(header.array(), 0, 16);
+                    int format = header.getShort(0) & 0xFFFF;
+                    channels = header.getShort(2);
+                    sampleRate = header.getInt(4);
+                    int bits = header.getShort(14);
+                    if ((format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_EXTENSIBLE) || bits != 16) {
+                        throw new IOException("Only 16 bit PCM WAV is supported: " + file);
+                    }
+
+                } else if (id == fourCC("data")) {
+                    if (sampleRate == 0) {
+                        throw new IOException("WAV data before fmt chunk: " + file);
+                    }
+                    // Streaming writers leave the size at 0 or 0xFFFFFFFF
+                    long available = raf.length() - body;
+                    long length = size == 0 || size > available ? available : size;
+                    return new FileAudioSource(file, sampleRate, channels, body, length, pacing);
+                }
+
+                position = body + size + (size & 1);
+            }
+
+            throw new IOException("WAV file has no data chunk: " + file);
+        }
+    }
+
+    /**
+     * Headerless 16 bit little endian PCM.
+     */
+    @NonNull
+    public static FileAudioSource pcm(@NonNull File file, int sampleRate, int channels,
+                                      @NonNull Pacing pacing) {
+        return new FileAudioSource(file, sampleRate, channels, 0, file.length(), pacing);
+    }
+
+    @Override
+    void open() throws IOException {
+        close();
+        mChannel = new FileInputStream(mFile).getChannel();
+        mChannel.position(mDataOffset);
+        mRemaining = mDataLength;
+    }
+
+    @Override
+    int readSamples(short[] buffer, int offset, int len) throws IOException {
+        FileChannel channel = mChannel;
+        if (channel == null) {
+            return -1;
+        }
+
+        int bytes = (int) Math.min((long) len * 2, mRemaining & ~1L);
+        if (mBytes.capacity() < bytes) {
+            mBytes = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mBytes.clear();
+        mBytes.limit(bytes);
+        while (mBytes.hasRemaining() && channel.read(mBytes) >= 0) {
+            // keep reading until the requested samples are in
+        }
+        mBytes.flip();
+
+        int read = mBytes.remaining() / 2;
+        for (int i = 0; i < read; i++) {
+            buffer[offset + i] = mBytes.getShort();
+        }
+        mRemaining -= read * 2;
+
+        return read;
+    }
+
+    @Override
+    synchronized void close() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+
+            } catch (IOException e) {
+                e.printStackTrace();
+
+            } finally {
+                mChannel = null;
+            }
+        }
+    }
+
+    private static int fourCC(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+}
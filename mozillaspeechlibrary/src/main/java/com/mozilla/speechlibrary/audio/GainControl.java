@@ -0,0 +1,157 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Integer only gain stage applied to captured frames before they are encoded. Gains are Q12
+ * fixed point and every output sample saturates to 16 bits instead of wrapping around; the
+ * number of samples that had to be clipped is kept in {@link #getClippedSamples()}.
+ * <ul>
+ *     <li>{@link Mode#NONE}: frames pass through untouched.</li>
+ *     <li>{@link Mode#FIXED}: voiced frames get a fixed 5x boost, the historical behavior.</li>
+ *     <li>{@link Mode#AUTOMATIC}: DC removal plus a gain that tracks the peak of voiced frames
+ *     towards {@link #TARGET_PEAK}, falling with a fast attack and rising with a slow release.
+ *     The gain is held during silence so background noise isn't pumped up.</li>
+ * </ul>
+ * Instances are not thread safe.
+ */
+public class GainControl {
+
+    public enum Mode {
+        NONE,
+        FIXED,
+        AUTOMATIC
+    }
+
+    public static final int UNITY_GAIN = 1 << 12;
+    public static final int FIXED_GAIN = 5 * UNITY_GAIN;
+    public static final int MAX_GAIN = 8 * UNITY_GAIN;
+    public static final int TARGET_PEAK = 16384;
+
+    private static final int ATTACK_MS = 10;
+    private static final int RELEASE_MS = 500;
+    // One pole DC blocker pole, 0.995 in Q15
+    private static final int DC_POLE = 32604;
+
+    private final Mode mMode;
+    private final int mAttack;
+    private final int mRelease;
+    private int mGain;
+    private int mDcInput;
+    private int mDcOutput;
+    private long mClippedSamples;
+
+    /**
+     * @param frameSize samples per channel in a typical frame, used to turn the attack and
+     *                  release times into per frame smoothing factors.
+     */
+    public GainControl(@NonNull Mode mode, int sampleRate, int frameSize) {
+        mMode = mode;
+        mAttack = smoothing(sampleRate, frameSize, ATTACK_MS);
+        mRelease = smoothing(sampleRate, frameSize, RELEASE_MS);
+        mGain = mode == Mode.FIXED ? FIXED_GAIN : UNITY_GAIN;
+    }
+
+    private static int smoothing(int sampleRate, int frameSize, int timeMs) {
+        double frameMs = frameSize * 1000.0 / sampleRate;
+        return (int) Math.round((1 - Math.exp(-frameMs / timeMs)) * 32768);
+    }
+
+    @NonNull
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     * Current gain, Q12.
+     */
+    public int getGain() {
+        return mGain;
+    }
+
+    public long getClippedSamples() {
+        return mClippedSamples;
+    }
+
+    /**
+     * Processes {@code len} samples in place.
+     *
+     * @param voice the VAD decision for the frame.
+     */
+    public void process(@NonNull short[] buffer, int pos, int len, boolean voice) {
+        switch (mMode) {
+            case FIXED:
+                if (voice) {
+                    applyGain(buffer, pos, len, FIXED_GAIN, FIXED_GAIN);
+                }
+                break;
+
+            case AUTOMATIC:
+                int peak = removeDc(buffer, pos, len);
+                int previous = mGain;
+                if (voice) {
+                    int target = (int) Math.min(MAX_GAIN, ((long) TARGET_PEAK << 12) / Math.max(peak, 1));
+                    int coefficient = target < mGain ? mAttack : mRelease;
+                    mGain += (int) (((long) (target - mGain) * coefficient) >> 15);
+                }
+                applyGain(buffer, pos, len, previous, mGain);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private int removeDc(short[] buffer, int pos, int len) {
+        int input = mDcInput;
+        int output = mDcOutput;
+        int peak = 0;
+        for (int i = pos; i < pos + len; i++) {
+            int x = buffer[i];
+            // y[n] = x[n] - x[n-1] + a * y[n-1]
+            output = x - input + (int) (((long) output * DC_POLE) >> 15);
+            input = x;
+            int y = saturate(output);
+            buffer[i] = (short) y;
+            int magnitude = y < 0 ? -y : y;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+        }
+        mDcInput = input;
+        mDcOutput = output;
+        return peak;
+    }
+
+    /**
+     * Ramps linearly from {@code from} to {@code to} over the frame to avoid zipper noise.
+     */
+    private void applyGain(short[] buffer, int pos, int len, int from, int to) {
+        if (from == UNITY_GAIN && to == UNITY_GAIN) {
+            return;
+        }
+
+        // Gain in Q20 so the per sample step keeps some precision
+        int gain = from << 8;
+        int step = len > 0 ? ((to - from) << 8) / len : 0;
+        long clipped = 0;
+        for (int i = pos; i < pos + len; i++) {
+            gain += step;
+            int y = (int) (((long) buffer[i] * gain) >> 20);
+            if (y > Short.MAX_VALUE) {
+                y = Short.MAX_VALUE;
+                clipped++;
+
+            } else if (y < Short.MIN_VALUE) {
+                y = Short.MIN_VALUE;
+                clipped++;
+            }
+            buffer[i] = (short) y;
+        }
+        mClippedSamples += clipped;
+    }
+
+    private static int saturate(int x) {
+        return x > Short.MAX_VALUE ? Short.MAX_VALUE : (x < Short.MIN_VALUE ? Short.MIN_VALUE : x);
+    }
+}
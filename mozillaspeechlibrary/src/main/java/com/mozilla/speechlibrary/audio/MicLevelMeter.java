@@ -0,0 +1,193 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Computes a single mic level per frame for UI feedback. All tables and buffers are allocated
+ * in the constructor so {@link #process} can run on the capture thread.
+ * <ul>
+ *     <li>{@link Mode#RMS}: linear RMS in [0, 1], no FFT.</li>
+ *     <li>{@link Mode#DBFS}: RMS in dB relative to full scale, no FFT.</li>
+ *     <li>{@link Mode#SPECTRUM}: mean of the per bin dB values, what {@code onMicActivity}
+ *     has always reported.</li>
+ *     <li>{@link Mode#BANDS}: Hann windowed band energies in dB, see {@link #getBands()}.
+ *     The level is the mean of the bands.</li>
+ * </ul>
+ * Instances are not thread safe.
+ */
+public class MicLevelMeter {
+
+    public enum Mode {
+        RMS,
+        DBFS,
+        SPECTRUM,
+        BANDS
+    }
+
+    public static final float[] DEFAULT_BAND_EDGES = new float[] { 100, 300, 1000, 3000, 8000 };
+
+    private static final double MIN_POWER = 1e-20;
+    private static final double MIN_DB = -200;
+    private static final double LOG10_2 = Math.log10(2);
+    private static final float[] NO_BANDS = new float[0];
+
+    private final Mode mMode;
+    private final RealFft mFft;
+    private final float[] mInput;
+    private final float[] mRe;
+    private final float[] mIm;
+    private final float[] mWindow;
+    private final int[] mBandBins;
+    private final float[] mBands;
+
+    public MicLevelMeter(int frameSize, @NonNull Mode mode) {
+        this(frameSize, mode, 0, DEFAULT_BAND_EDGES);
+    }
+
+    /**
+     * @param sampleRate only used to map {@code bandEdgesHz} to FFT bins in {@link Mode#BANDS}.
+     * @param bandEdgesHz ascending band edges, {@code n} edges make {@code n - 1} bands.
+     */
+    public MicLevelMeter(int frameSize, @NonNull Mode mode, int sampleRate, @NonNull float[] bandEdgesHz) {
+        mMode = mode;
+
+        if (mode == Mode.SPECTRUM || mode == Mode.BANDS) {
+            int size = Math.max(4, Integer.highestOneBit(Math.max(1, frameSize - 1)) << 1);
+            mFft = new RealFft(size);
+            mInput = new float[size];
+            mRe = new float[size / 2 + 1];
+            mIm = new float[size / 2 + 1];
+
+        } else {
+            mFft = null;
+            mInput = null;
+            mRe = null;
+            mIm = null;
+        }
+
+        if (mode == Mode.BANDS) {
+            if (sampleRate <= 0 || bandEdgesHz.length < 2) {
+                throw new IllegalArgumentException("Bands need a sample rate and at least two edges");
+            }
+
+            mWindow = new float[frameSize];
+            for (int i = 0; i < frameSize; i++) {
+                mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (frameSize - 1)));
+            }
+
+            int maxBin = mFft.getSize() / 2;
+            mBandBins = new int[bandEdgesHz.length];
+            for (int i = 0; i < bandEdgesHz.length; i++) {
+                int bin = Math.round(bandEdgesHz[i] * mFft.getSize() / sampleRate);
+                mBandBins[i] = Math.max(0, Math.min(maxBin + 1, bin));
+            }
+            mBands = new float[bandEdgesHz.length - 1];
+
+        } else {
+            mWindow = null;
+            mBandBins = null;
+            mBands = null;
+        }
+    }
+
+    @NonNull
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     * Band levels in dB from the last {@link #process} call in {@link Mode#BANDS}, empty otherwise.
+     * The array is reused between calls.
+     */
+    @NonNull
+    public float[] getBands() {
+        return mBands != null ? mBands : NO_BANDS;
+    }
+
+    public double process(@NonNull short[] buffer, int offset, int len) {
+        if (len <= 0) {
+            return mMode == Mode.RMS ? 0 : MIN_DB;
+        }
+
+        switch (mMode) {
+            case RMS:
+                return rms(buffer, offset, len);
+            case DBFS:
+                return 20 * Math.log10(Math.max(rms(buffer, offset, len), 1e-10));
+            case SPECTRUM:
+                return spectrum(buffer, offset, len);
+            default:
+                return bands(buffer, offset, len);
+        }
+    }
+
+    private static double rms(short[] buffer, int offset, int len) {
+        long sum = 0;
+        for (int i = offset; i < offset + len; i++) {
+            int s = buffer[i];
+            sum += s * s;
+        }
+        return Math.sqrt((double) sum / len) / 0x7fff;
+    }
+
+    private void load(short[] buffer, int offset, int len, float[] window) {
+        int n = Math.min(len, mInput.length);
+        for (int i = 0; i < n; i++) {
+            float s = buffer[offset + i] / (float) 0x7fff;
+            mInput[i] = window != null && i < window.length ? s * window[i] : s;
+        }
+        for (int i = n; i < mInput.length; i++) {
+            mInput[i] = 0;
+        }
+        mFft.forward(mInput, 0, mRe, mIm);
+    }
+
+    private double spectrum(short[] buffer, int offset, int len) {
+        load(buffer, offset, len, null);
+
+        // mean(10 * log10(p)) == 10 * log10(product(p)) / n, the product is kept as mantissa and
+        // exponent so there is a single log per frame instead of one per bin
+        int size = mFft.getSize();
+        int bins = size / 2;
+        double scale = 1.0 / size;
+        double mantissa = 1;
+        long exponent = 0;
+        for (int k = 0; k < bins; k++) {
+            double re = mRe[k] * scale;
+            double im = mIm[k] * scale;
+            double p = re * re + im * im;
+            if (k != 0) {
+                p *= 2;
+            }
+            mantissa *= Math.max(p, MIN_POWER);
+            // eight factors of at least 1e-20 can't underflow a double
+            if ((k & 7) == 7) {
+                int e = Math.getExponent(mantissa);
+                exponent += e;
+                mantissa = Math.scalb(mantissa, -e);
+            }
+        }
+        double log2 = exponent + Math.log(mantissa) / Math.log(2);
+        return 10 * log2 * LOG10_2 / bins;
+    }
+
+    private double bands(short[] buffer, int offset, int len) {
+        load(buffer, offset, len, mWindow);
+
+        double scale = 1.0 / mFft.getSize();
+        double sum = 0;
+        for (int b = 0; b < mBands.length; b++) {
+            double energy = 0;
+            int end = Math.min(mBandBins[b + 1], mRe.length);
+            for (int k = mBandBins[b]; k < end; k++) {
+                double re = mRe[k] * scale;
+                double im = mIm[k] * scale;
+                energy += re * re + im * im;
+            }
+            double dB = energy > MIN_POWER ? 10 * Math.log10(energy) : MIN_DB;
+            mBands[b] = (float) dB;
+            sum += dB;
+        }
+        return sum / mBands.length;
+    }
+}
@@ -0,0 +1,110 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+
+/**
+ * Converts 48, 32 or 16 kHz audio with one or two channels to 16 kHz mono with the WebRTC
+ * resamplers, downmixing and decimating in a single native pass. Capturing at the device's
+ * native rate and converting here avoids the resampler Android puts in front of a 16 kHz
+ * {@code AudioRecord}.
+ * <p>
+ * Input is converted in 10 ms blocks, samples short of a block are held until the next call.
+ * An instance is used from one thread at a time.
+ */
+public class NativeResampler implements Closeable {
+
+    public static final int OUTPUT_SAMPLE_RATE = 16000;
+
+    static {
+        System.loadLibrary("webrtc_jni");
+    }
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private long mHandle;
+
+    public NativeResampler(int sampleRate, int channels) {
+        if (!isSupported(sampleRate, channels, OUTPUT_SAMPLE_RATE)) {
+            throw new IllegalArgumentException("Unsupported format: " + sampleRate + " Hz, " +
+                    channels + " channels");
+        }
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mHandle = nativeCreate(sampleRate, channels);
+        if (mHandle == 0) {
+            throw new OutOfMemoryError("Can't allocate the resampler");
+        }
+    }
+
+    /**
+     * Whether audio can be converted from the given format to mono at {@code outputSampleRate}.
+     */
+    public static boolean isSupported(int sampleRate, int channels, int outputSampleRate) {
+        return outputSampleRate == OUTPUT_SAMPLE_RATE &&
+                (sampleRate == 48000 || sampleRate == 32000 || sampleRate == 16000) &&
+                (channels == 1 || channels == 2);
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * Most samples {@link #process(short[], int, int, short[], int)} can return for
+     * {@code len} input samples, to size the output buffer.
+     */
+    public int getOutputSize(int len) {
+        int block = mSampleRate / 100;
+        return (len / mChannels + block - 1) / block * (OUTPUT_SAMPLE_RATE / 100);
+    }
+
+    /**
+     * Converts {@code len} interleaved samples.
+     *
+     * @return the number of samples written to {@code out}, at most {@link #getOutputSize(int)}.
+     */
+    public int process(@NonNull short[] in, int offset, int len,
+                       @NonNull short[] out, int outOffset) {
+        if (mHandle == 0) {
+            throw new IllegalStateException("Resampler is closed");
+        }
+        if (offset < 0 || len < 0 || offset + len > in.length ||
+                outOffset < 0 || outOffset + getOutputSize(len) > out.length) {
+            throw new ArrayIndexOutOfBoundsException("Bad range: " + offset + "+" + len + " into " +
+                    outOffset + "+" + getOutputSize(len));
+        }
+        return nativeProcess(mHandle, in, offset, len, out, outOffset);
+    }
+
+    /**
+     * Drops the held samples and the filter state, to start a new stream.
+     */
+    public void reset() {
+        if (mHandle != 0) {
+            nativeReset(mHandle);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mHandle != 0) {
+            nativeFree(mHandle);
+            mHandle = 0;
+        }
+    }
+
+    private static native long nativeCreate(int sampleRate, int channels);
+
+    private static native void nativeReset(long handle);
+
+    private static native void nativeFree(long handle);
+
+    private static native int nativeProcess(long handle, short[] in, int offset, int len,
+                                            short[] out, int outOffset);
+}
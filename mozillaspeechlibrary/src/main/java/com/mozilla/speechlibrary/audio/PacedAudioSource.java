@@ -0,0 +1,100 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class for sources backed by recorded audio. With {@link Pacing#REAL_TIME} reads block
+ * until the audio they return would have been captured by a microphone, with
+ * {@link Pacing#AS_FAST_AS_POSSIBLE} they return immediately.
+ */
+public abstract class PacedAudioSource implements AudioSource {
+
+    public enum Pacing {
+        REAL_TIME,
+        AS_FAST_AS_POSSIBLE
+    }
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final Pacing mPacing;
+    private volatile boolean mStopped;
+    private long mStartNanos;
+    private long mSamplesRead;
+
+    PacedAudioSource(int sampleRate, int channels, @NonNull Pacing pacing) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mPacing = pacing;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannels() {
+        return mChannels;
+    }
+
+    @NonNull
+    public Pacing getPacing() {
+        return mPacing;
+    }
+
+    @Override
+    public void start() throws IOException {
+        open();
+        mStopped = false;
+        mSamplesRead = 0;
+        mStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int len) throws IOException {
+        if (mStopped) {
+            return -1;
+        }
+
+        int read;
+        try {
+            read = readSamples(buffer, offset, len);
+
+        } catch (IOException e) {
+            // stop() closed the file underneath the read
+            if (mStopped) {
+                return -1;
+            }
+            throw e;
+        }
+        if (read <= 0) {
+            return -1;
+        }
+
+        mSamplesRead += read;
+        if (mPacing == Pacing.REAL_TIME) {
+            long due = mStartNanos + mSamplesRead / mChannels * 1_000_000_000L / mSampleRate;
+            long wait;
+            while (!mStopped && (wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        return mStopped ? -1 : read;
+    }
+
+    @Override
+    public void stop() {
+        mStopped = true;
+        close();
+    }
+
+    abstract void open() throws IOException;
+
+    abstract int readSamples(short[] buffer, int offset, int len) throws IOException;
+
+    abstract void close();
+}
@@ -0,0 +1,67 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Keeps the most recent {@code capacity} samples written to it, so the audio right before
+ * speech onset can be replayed once the VAD fires. Not thread safe, it lives on the capture
+ * thread.
+ */
+public class PreRollBuffer {
+
+    private final short[] mBuffer;
+    private int mStart;
+    private int mSize;
+
+    public PreRollBuffer(int capacity) {
+        mBuffer = new short[Math.max(1, capacity)];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void write(@NonNull short[] buffer, int pos, int len) {
+        int capacity = mBuffer.length;
+        if (len >= capacity) {
+            System.arraycopy(buffer, pos + len - capacity, mBuffer, 0, capacity);
+            mStart = 0;
+            mSize = capacity;
+            return;
+        }
+
+        int end = (mStart + mSize) % capacity;
+        int first = Math.min(len, capacity - end);
+        System.arraycopy(buffer, pos, mBuffer, end, first);
+        System.arraycopy(buffer, pos + first, mBuffer, 0, len - first);
+
+        int overflow = mSize + len - capacity;
+        if (overflow > 0) {
+            mStart = (mStart + overflow) % capacity;
+            mSize = capacity;
+
+        } else {
+            mSize += len;
+        }
+    }
+
+    /**
+     * Moves up to {@code len} of the oldest samples into {@code buffer}.
+     *
+     * @return the number of samples read, 0 once empty.
+     */
+    public int read(@NonNull short[] buffer, int pos, int len) {
+        int count = Math.min(len, mSize);
+        int first = Math.min(count, mBuffer.length - mStart);
+        System.arraycopy(mBuffer, mStart, buffer, pos, first);
+        System.arraycopy(mBuffer, 0, buffer, pos + first, count - first);
+        mStart = (mStart + count) % mBuffer.length;
+        mSize -= count;
+        return count;
+    }
+
+    public void clear() {
+        mStart = 0;
+        mSize = 0;
+    }
+}
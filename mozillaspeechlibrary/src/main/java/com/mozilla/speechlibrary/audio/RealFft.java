@@ -0,0 +1,104 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Forward FFT of real input. The {@code size} samples are packed into a half size complex FFT
+ * and split afterwards, so only half the butterflies of a complex transform are needed.
+ * Bit reversal and twiddle tables are computed once, {@link #forward} doesn't allocate.
+ * Instances are not thread safe.
+ */
+public class RealFft {
+
+    private final int mSize;
+    private final int mHalf;
+    private final int[] mBitReverse;
+    private final float[] mCos;
+    private final float[] mSin;
+    private final float[] mRe;
+    private final float[] mIm;
+
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+
+        mSize = size;
+        mHalf = size / 2;
+        mRe = new float[mHalf];
+        mIm = new float[mHalf];
+
+        // e^(-2 pi i k / size), the half size transform uses every other entry
+        mCos = new float[mHalf];
+        mSin = new float[mHalf];
+        for (int k = 0; k < mHalf; k++) {
+            double angle = 2 * Math.PI * k / size;
+            mCos[k] = (float) Math.cos(angle);
+            mSin[k] = (float) -Math.sin(angle);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(mHalf);
+        mBitReverse = new int[mHalf];
+        for (int i = 0; i < mHalf; i++) {
+            mBitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Transforms {@code size} samples of {@code input} starting at {@code offset}.
+     * {@code re} and {@code im} receive the {@code size / 2 + 1} non redundant bins.
+     */
+    public void forward(@NonNull float[] input, int offset, @NonNull float[] re, @NonNull float[] im) {
+        float[] zr = mRe;
+        float[] zi = mIm;
+        int half = mHalf;
+
+        for (int i = 0; i < half; i++) {
+            int j = mBitReverse[i];
+            zr[j] = input[offset + 2 * i];
+            zi[j] = input[offset + 2 * i + 1];
+        }
+
+        for (int len = 2; len <= half; len <<= 1) {
+            int step = mSize / len;
+            int span = len >> 1;
+            for (int k = 0; k < span; k++) {
+                float wr = mCos[k * step];
+                float wi = mSin[k * step];
+                for (int a = k; a < half; a += len) {
+                    int b = a + span;
+                    float tr = zr[b] * wr - zi[b] * wi;
+                    float ti = zr[b] * wi + zi[b] * wr;
+                    zr[b] = zr[a] - tr;
+                    zi[b] = zi[a] - ti;
+                    zr[a] += tr;
+                    zi[a] += ti;
+                }
+            }
+        }
+
+        re[0] = zr[0] + zi[0];
+        im[0] = 0;
+        re[half] = zr[0] - zi[0];
+        im[half] = 0;
+        for (int k = 1; k < half; k++) {
+            float ar = zr[k];
+            float ai = zi[k];
+            float br = zr[half - k];
+            float bi = -zi[half - k];
+            // even = (Z[k] + conj(Z[N/2 - k])) / 2, odd = (Z[k] - conj(Z[N/2 - k])) / 2i
+            float er = (ar + br) * 0.5f;
+            float ei = (ai + bi) * 0.5f;
+            float or = (ai - bi) * 0.5f;
+            float oi = -(ar - br) * 0.5f;
+            float wr = mCos[k];
+            float wi = mSin[k];
+            re[k] = er + or * wr - oi * wi;
+            im[k] = ei + or * wi + oi * wr;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Delivers another source as 16 kHz mono, converted with a {@link NativeResampler}. Reads
+ * block until {@code len} samples are available, like a 16 kHz {@code AudioRecord} would, so
+ * the capture loop sees the same frames either way. A read of the source that returns nothing
+ * is passed on as a short read.
+ */
+public class ResamplingAudioSource implements AudioSource {
+
+    private final AudioSource mSource;
+    private final short[] mInput;
+    private short[] mOutput;
+    private int mOutputPos;
+    private int mOutputLength;
+    private NativeResampler mResampler;
+
+    /**
+     * @param frameMs length of the reads from {@code source}, a multiple of 10 ms.
+     */
+    public ResamplingAudioSource(@NonNull AudioSource source, int frameMs) {
+        if (!NativeResampler.isSupported(source.getSampleRate(), source.getChannels(),
+                NativeResampler.OUTPUT_SAMPLE_RATE)) {
+            throw new IllegalArgumentException("Unsupported audio source format: " +
+                    source.getSampleRate() + " Hz, " + source.getChannels() + " channels");
+        }
+        mSource = source;
+        mInput = new short[source.getSampleRate() * frameMs / 1000 * source.getChannels()];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return NativeResampler.OUTPUT_SAMPLE_RATE;
+    }
+
+    @Override
+    public int getChannels() {
+        return 1;
+    }
+
+    @Override
+    public void start() throws IOException {
+        synchronized (this) {
+            mResampler = new NativeResampler(mSource.getSampleRate(), mSource.getChannels());
+            mOutput = new short[mResampler.getOutputSize(mInput.length)];
+            mOutputPos = 0;
+            mOutputLength = 0;
+        }
+        mSource.start();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            if (mOutputPos == mOutputLength) {
+                int read = mSource.read(mInput, 0, mInput.length);
+                if (read < 0) {
+                    return done > 0 ? done : read;
+
+                } else if (read == 0) {
+                    return done;
+                }
+
+                // stop() may close the resampler from another thread
+                synchronized (this) {
+                    if (mResampler == null) {
+                        return -1;
+                    }
+                    mOutputLength = mResampler.process(mInput, 0, read, mOutput, 0);
+                    mOutputPos = 0;
+                }
+                continue;
+            }
+
+            int n = Math.min(len - done, mOutputLength - mOutputPos);
+            System.arraycopy(mOutput, mOutputPos, buffer, offset + done, n);
+            mOutputPos += n;
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public void stop() {
+        mSource.stop();
+        synchronized (this) {
+            if (mResampler != null) {
+                mResampler.close();
+                mResampler = null;
+            }
+        }
+    }
+}
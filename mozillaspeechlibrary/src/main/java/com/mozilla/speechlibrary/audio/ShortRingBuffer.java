@@ -0,0 +1,210 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.nio.BufferOverflowException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single producer, single consumer queue of 16 bit samples. Neither side takes a lock
+ * or allocates, a side that has to wait parks until the other one unparks it, so an idle
+ * consumer costs no CPU.
+ * <p>
+ * Only one thread may call {@link #write} and only one thread may call {@link #read}.
+ */
+public class ShortRingBuffer {
+
+    public enum OverflowPolicy {
+        /** The writer waits for the reader to make room. */
+        BLOCK,
+        /** The oldest unread samples are overwritten and counted in {@link #getDropped()}. */
+        DROP_OLDEST,
+        /** {@link #write} throws {@link BufferOverflowException}. */
+        ERROR
+    }
+
+    private final short[] mBuffer;
+    private final int mMask;
+    private final OverflowPolicy mPolicy;
+    // Total samples ever read and written, the difference is the fill level
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private volatile int mMaxSize;
+    private volatile Thread mWaitingReader;
+    private volatile Thread mWaitingWriter;
+    private volatile boolean mClosed;
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    public ShortRingBuffer(int capacity, @NonNull OverflowPolicy policy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mBuffer = new short[size];
+        mMask = size - 1;
+        mPolicy = policy;
+    }
+
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * Highest fill level seen after a write.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Appends {@code len} samples, applying the overflow policy when the buffer is full.
+     * Writes after {@link #close()} are ignored.
+     */
+    public void write(@NonNull short[] buffer, int pos, int len) {
+        while (len > 0 && !mClosed) {
+            int chunk = Math.min(len, mBuffer.length);
+            long tail = mTail.get();
+
+            if (!reserve(tail, chunk)) {
+                return;
+            }
+
+            int index = (int) (tail & mMask);
+            int first = Math.min(chunk, mBuffer.length - index);
+            System.arraycopy(buffer, pos, mBuffer, index, first);
+            System.arraycopy(buffer, pos + first, mBuffer, 0, chunk - first);
+            mTail.set(tail + chunk);
+            int size = (int) (tail + chunk - mHead.get());
+            if (size > mMaxSize) {
+                mMaxSize = size;
+            }
+
+            Thread reader = mWaitingReader;
+            if (reader != null) {
+                LockSupport.unpark(reader);
+            }
+
+            pos += chunk;
+            len -= chunk;
+        }
+    }
+
+    private boolean reserve(long tail, int chunk) {
+        while (true) {
+            long head = mHead.get();
+            long missing = chunk - (mBuffer.length - (tail - head));
+            if (missing <= 0) {
+                return true;
+            }
+
+            switch (mPolicy) {
+                case ERROR:
+                    throw new BufferOverflowException();
+
+                case DROP_OLDEST:
+                    if (mHead.compareAndSet(head, head + missing)) {
+                        mDropped.addAndGet(missing);
+                        return true;
+                    }
+                    break;
+
+                default:
+                    mWaitingWriter = Thread.currentThread();
+                    if (mHead.get() == head && !mClosed) {
+                        LockSupport.park(this);
+                    }
+                    mWaitingWriter = null;
+                    if (mClosed) {
+                        return false;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Reads up to {@code len} samples, parking until at least one is available.
+     *
+     * @return the number of samples read, or -1 once the buffer is closed and drained.
+     */
+    public int read(@NonNull short[] buffer, int pos, int len) {
+        while (true) {
+            long head = mHead.get();
+            long available = mTail.get() - head;
+
+            if (available > 0) {
+                int count = (int) Math.min(len, available);
+                int index = (int) (head & mMask);
+                int first = Math.min(count, mBuffer.length - index);
+                System.arraycopy(mBuffer, index, buffer, pos, first);
+                System.arraycopy(mBuffer, 0, buffer, pos + first, count - first);
+
+                // Fails if the writer dropped these samples while they were being copied
+                if (mHead.compareAndSet(head, head + count)) {
+                    Thread writer = mWaitingWriter;
+                    if (writer != null) {
+                        LockSupport.unpark(writer);
+                    }
+                    return count;
+                }
+                continue;
+            }
+
+            if (mClosed) {
+                return -1;
+            }
+
+            mWaitingReader = Thread.currentThread();
+            if (mTail.get() == head && !mClosed) {
+                LockSupport.park(this);
+            }
+            mWaitingReader = null;
+        }
+    }
+
+    /**
+     * Reads {@code len} samples, parking until they are all available.
+     *
+     * @return the number of samples read, less than {@code len} only at the end of the stream,
+     * or -1 once the buffer is closed and drained.
+     */
+    public int readFully(@NonNull short[] buffer, int pos, int len) {
+        int done = 0;
+        while (done < len) {
+            int read = read(buffer, pos + done, len - done);
+            if (read < 0) {
+                return done > 0 ? done : -1;
+            }
+            done += read;
+        }
+        return done;
+    }
+
+    /**
+     * Marks the end of the stream. The reader still gets the samples already written.
+     */
+    public void close() {
+        mClosed = true;
+
+        Thread reader = mWaitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+        Thread writer = mWaitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+}
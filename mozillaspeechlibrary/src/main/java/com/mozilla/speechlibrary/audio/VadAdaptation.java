@@ -0,0 +1,192 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import com.mozilla.speechlibrary.Vad;
+
+/**
+ * Estimates the background noise floor and the speech to noise ratio of a session from frames
+ * and their VAD decisions, and picks the VAD mode and end of speech hangover for it:
+ * <ul>
+ * <li>{@link Environment#QUIET}: the configured mode, and a hangover of at most
+ * {@link #QUIET_HANGOVER_MS} since silence is reliable.</li>
+ * <li>{@link Environment#NORMAL}: the configured mode and hangover.</li>
+ * <li>{@link Environment#NOISY}: one mode less aggressive than configured, so speech in a car or
+ * a cafe isn't clipped.</li>
+ * </ul>
+ * A new environment is only taken after it has been measured for {@link #HOLD_MS}, and leaving
+ * one takes {@link #HYSTERESIS_DB} more than entering it, so the settings don't flap around a
+ * threshold. Time is counted in samples, like {@link Endpointer}.
+ */
+public class VadAdaptation {
+
+    public enum Environment {
+        QUIET,
+        NORMAL,
+        NOISY
+    }
+
+    /** Noise floor below which the room is quiet, in dBFS. */
+    public static final double QUIET_DBFS = -62;
+    /** Noise floor above which the environment is noisy, in dBFS. */
+    public static final double NOISY_DBFS = -45;
+    /** Speech to noise ratio below which the environment is noisy, in dB. */
+    public static final double NOISY_SNR_DB = 12;
+    public static final double HYSTERESIS_DB = 5;
+    public static final int HOLD_MS = 1000;
+    public static final int QUIET_HANGOVER_MS = 700;
+
+    private static final double FULL_SCALE = 32768.0 * 32768.0;
+    private static final double MIN_DBFS = -96;
+    // Smoothing time constants, the noise floor follows drops faster than rises
+    private static final int NOISE_DOWN_MS = 200;
+    private static final int NOISE_UP_MS = 2000;
+    private static final int SPEECH_MS = 500;
+
+    private final int mSampleRate;
+    private final Vad.Mode mBaseMode;
+    private final int mBaseHangoverMs;
+    private final long mHoldSamples;
+
+    private Environment mEnvironment;
+    private Environment mCandidate;
+    private long mCandidateSamples;
+    private long mTotalSamples;
+    private double mNoiseDbfs;
+    private double mSpeechDbfs;
+    private boolean mHasNoise;
+    private boolean mHasSpeech;
+    private int mChanges;
+
+    public VadAdaptation(int sampleRate, @NonNull Vad.Mode baseMode, int baseHangoverMs) {
+        mSampleRate = sampleRate;
+        mBaseMode = baseMode;
+        mBaseHangoverMs = baseHangoverMs;
+        mHoldSamples = (long) sampleRate * HOLD_MS / 1000;
+        reset();
+    }
+
+    public void reset() {
+        mEnvironment = Environment.NORMAL;
+        mCandidate = Environment.NORMAL;
+        mCandidateSamples = 0;
+        mTotalSamples = 0;
+        mNoiseDbfs = MIN_DBFS;
+        mSpeechDbfs = MIN_DBFS;
+        mHasNoise = false;
+        mHasSpeech = false;
+        mChanges = 0;
+    }
+
+    /**
+     * Updates the estimates with a frame.
+     *
+     * @param voice the VAD decision for the frame.
+     * @return true if the environment changed, {@link #getMode()} and {@link #getHangoverMs()}
+     * should be applied then.
+     */
+    public boolean update(@NonNull short[] x, int offset, int n, boolean voice) {
+        if (n <= 0) {
+            return false;
+        }
+
+        long sum = 0;
+        for (int i = offset; i < offset + n; i++) {
+            sum += x[i] * x[i];
+        }
+        double level = Math.max(10 * Math.log10((double) sum / n / FULL_SCALE), MIN_DBFS);
+
+        if (voice) {
+            mSpeechDbfs = mHasSpeech ? smooth(mSpeechDbfs, level, SPEECH_MS, n) : level;
+            mHasSpeech = true;
+
+        } else if (!mHasNoise) {
+            mNoiseDbfs = level;
+            mHasNoise = true;
+
+        } else {
+            mNoiseDbfs = smooth(mNoiseDbfs, level, level < mNoiseDbfs ? NOISE_DOWN_MS : NOISE_UP_MS, n);
+        }
+
+        mTotalSamples += n;
+        if (!mHasNoise) {
+            return false;
+        }
+
+        Environment target = classify();
+        if (target != mCandidate) {
+            mCandidate = target;
+            mCandidateSamples = 0;
+        }
+        mCandidateSamples += n;
+
+        if (mCandidate != mEnvironment && mCandidateSamples >= mHoldSamples) {
+            mEnvironment = mCandidate;
+            mChanges++;
+            return true;
+        }
+        return false;
+    }
+
+    private double smooth(double current, double level, int timeConstantMs, int samples) {
+        double alpha = Math.exp(-1000.0 * samples / mSampleRate / timeConstantMs);
+        return alpha * current + (1 - alpha) * level;
+    }
+
+    // Leaving the current environment takes HYSTERESIS_DB more than entering it
+    private Environment classify() {
+        double noisy = NOISY_DBFS - (mEnvironment == Environment.NOISY ? HYSTERESIS_DB : 0);
+        double noisySnr = NOISY_SNR_DB + (mEnvironment == Environment.NOISY ? HYSTERESIS_DB : 0);
+        double quiet = QUIET_DBFS + (mEnvironment == Environment.QUIET ? HYSTERESIS_DB : 0);
+
+        if (mNoiseDbfs > noisy || (mHasSpeech && getSnrDb() < noisySnr)) {
+            return Environment.NOISY;
+
+        } else if (mNoiseDbfs < quiet) {
+            return Environment.QUIET;
+        }
+        return Environment.NORMAL;
+    }
+
+    @NonNull
+    public Environment getEnvironment() {
+        return mEnvironment;
+    }
+
+    @NonNull
+    public Vad.Mode getMode() {
+        if (mEnvironment == Environment.NOISY && mBaseMode.ordinal() > 0) {
+            return Vad.Mode.values()[mBaseMode.ordinal() - 1];
+        }
+        return mBaseMode;
+    }
+
+    public int getHangoverMs() {
+        if (mEnvironment == Environment.QUIET) {
+            return Math.min(mBaseHangoverMs, QUIET_HANGOVER_MS);
+        }
+        return mBaseHangoverMs;
+    }
+
+    public double getNoiseDbfs() {
+        return mNoiseDbfs;
+    }
+
+    /**
+     * Smoothed level of voiced frames over the noise floor, NaN before any voice.
+     */
+    public double getSnrDb() {
+        return mHasSpeech ? mSpeechDbfs - mNoiseDbfs : Double.NaN;
+    }
+
+    public long getTimeMs() {
+        return mTotalSamples * 1000 / mSampleRate;
+    }
+
+    /**
+     * Number of environment changes since the start.
+     */
+    public int getChanges() {
+        return mChanges;
+    }
+}
@@ -0,0 +1,966 @@
+/*
+ *  Copyright (c) 2012 The WebRTC project authors. All Rights Reserved.
+ *
+ *  Use of this source code is governed by a BSD-style license
+ *  that can be found in the LICENSE file in the root of the source
+ *  tree. An additional intellectual property rights grant can be found
+ *  in the file PATENTS.  All contributing project authors may
+ *  be found in the AUTHORS file in the root of the source tree.
+ */
+
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Java port of the WebRTC VAD in {@code src/main/cpp/webrtc/common_audio/vad}: vad_core,
+ * vad_filterbank, vad_gmm, vad_sp and the 48 to 8 kHz resampler it uses. It's fixed point and
+ * bit exact with the C code, including its quirks, so it gives the same decisions without the
+ * native library, e.g. in JVM unit tests or server side batch jobs. Nothing is allocated after
+ * construction. Not thread safe.
+ */
+public class WebRtcVadCore {
+
+    private static final int NUM_CHANNELS = 6;
+    private static final int NUM_GAUSSIANS = 2;
+    private static final int TABLE_SIZE = NUM_CHANNELS * NUM_GAUSSIANS;
+    private static final int MIN_ENERGY = 10;
+    private static final int INIT_CHECK = 42;
+
+    // vad_core.c
+    private static final short[] SPECTRUM_WEIGHT = { 6, 8, 10, 12, 14, 16 };
+    private static final int NOISE_UPDATE_CONST = 655;
+    private static final int SPEECH_UPDATE_CONST = 6554;
+    private static final int BACK_ETA = 154;
+    private static final short[] MINIMUM_DIFFERENCE = { 544, 544, 576, 576, 576, 576 };
+    private static final short[] MAXIMUM_SPEECH = { 11392, 11392, 11520, 11520, 11520, 11520 };
+    private static final short[] MINIMUM_MEAN = { 640, 768 };
+    private static final short[] MAXIMUM_NOISE = { 9216, 9088, 8960, 8832, 8704, 8576 };
+    private static final short[] NOISE_DATA_WEIGHTS = {
+            34, 62, 72, 66, 53, 25, 94, 66, 56, 62, 75, 103 };
+    private static final short[] SPEECH_DATA_WEIGHTS = {
+            48, 82, 45, 87, 50, 47, 80, 46, 83, 41, 78, 81 };
+    private static final short[] NOISE_DATA_MEANS = {
+            6738, 4892, 7065, 6715, 6771, 3369, 7646, 3863, 7820, 7266, 5020, 4362 };
+    private static final short[] SPEECH_DATA_MEANS = {
+            8306, 10085, 10078, 11823, 11843, 6309, 9473, 9571, 10879, 7581, 8180, 7483 };
+    private static final short[] NOISE_DATA_STDS = {
+            378, 1064, 493, 582, 688, 593, 474, 697, 475, 688, 421, 455 };
+    private static final short[] SPEECH_DATA_STDS = {
+            555, 505, 567, 524, 585, 1231, 509, 828, 492, 1540, 1079, 850 };
+    private static final int MAX_SPEECH_FRAMES = 6;
+    private static final int MIN_STD = 384;
+
+    // Per mode: over hang max 1, over hang max 2, local threshold and global threshold for
+    // 10, 20 and 30 ms frames
+    private static final short[][][] MODES = {
+            { { 8, 4, 3 }, { 14, 7, 5 }, { 24, 21, 24 }, { 57, 48, 57 } },
+            { { 8, 4, 3 }, { 14, 7, 5 }, { 37, 32, 37 }, { 100, 80, 100 } },
+            { { 6, 3, 2 }, { 9, 5, 3 }, { 82, 78, 82 }, { 285, 260, 285 } },
+            { { 6, 3, 2 }, { 9, 5, 3 }, { 94, 94, 94 }, { 1100, 1050, 1100 } }
+    };
+
+    // vad_filterbank.c
+    private static final int LOG_CONST = 24660;
+    private static final int LOG_ENERGY_INT_PART = 14336;
+    private static final short[] HP_ZERO_COEFS = { 6631, -13262, 6631 };
+    private static final short[] HP_POLE_COEFS = { 16384, -7756, 5620 };
+    private static final short[] ALL_PASS_COEFS_Q15 = { 20972, 5571 };
+    private static final short[] OFFSET_VECTOR = { 368, 368, 272, 176, 176, 176 };
+
+    // vad_gmm.c
+    private static final int COMP_VAR = 22005;
+    private static final int LOG2_EXP = 5909;
+
+    // vad_sp.c
+    private static final short[] ALL_PASS_COEFS_Q13 = { 5243, 1392 };
+    private static final int SMOOTHING_DOWN = 6553;
+    private static final int SMOOTHING_UP = 32439;
+
+    // resample_by_2_internal.c and resample_fractional.c
+    private static final int[][] RESAMPLE_ALLPASS = {
+            { 821, 6110, 12382 },
+            { 3050, 9368, 15063 }
+    };
+    private static final int[][] COEFFICIENTS_48_TO_32 = {
+            { 778, -2050, 1087, 23285, 12903, -3783, 441, 222 },
+            { 222, 441, -3783, 12903, 23285, 1087, -2050, 778 }
+    };
+
+    // VadInstT
+    private int mVad;
+    private final int[] mDownsamplingFilterStates = new int[4];
+    private final int[] mState48To24 = new int[8];
+    private final int[] mState24To24 = new int[16];
+    private final int[] mState24To16 = new int[8];
+    private final int[] mState16To8 = new int[8];
+    private final short[] mNoiseMeans = new short[TABLE_SIZE];
+    private final short[] mSpeechMeans = new short[TABLE_SIZE];
+    private final short[] mNoiseStds = new short[TABLE_SIZE];
+    private final short[] mSpeechStds = new short[TABLE_SIZE];
+    private int mFrameCounter;
+    private short mOverHang;
+    private short mNumOfSpeech;
+    private final short[] mIndexVector = new short[16 * NUM_CHANNELS];
+    private final short[] mLowValueVector = new short[16 * NUM_CHANNELS];
+    private final short[] mMeanValue = new short[NUM_CHANNELS];
+    private final short[] mUpperState = new short[5];
+    private final short[] mLowerState = new short[5];
+    private final short[] mHpFilterState = new short[4];
+    private final short[] mOverHangMax1 = new short[3];
+    private final short[] mOverHangMax2 = new short[3];
+    private final short[] mIndividual = new short[3];
+    private final short[] mTotal = new short[3];
+    private final short[] mLastFeatures = new short[NUM_CHANNELS];
+    private short mLastTotalPower;
+    private int mLastLogLikelihoodRatio;
+    private short mLastThreshold;
+    private int mInitFlag;
+
+    // Scratch buffers, the C code keeps these on the stack
+    private final short[] mSpeechWB = new short[480];
+    private final short[] mSpeechNB = new short[240];
+    private final int[] mTmpMem = new int[480 + 256];
+    private final short[] mFeatures = new short[NUM_CHANNELS];
+    private final short[] mHp120 = new short[120];
+    private final short[] mLp120 = new short[120];
+    private final short[] mHp60 = new short[60];
+    private final short[] mLp60 = new short[60];
+    private short mTotalEnergy;
+    private final short[] mDeltaN = new short[TABLE_SIZE];
+    private final short[] mDeltaS = new short[TABLE_SIZE];
+    private final short[] mNgprvec = new short[TABLE_SIZE];
+    private final short[] mSgprvec = new short[TABLE_SIZE];
+    private final int[] mNoiseProbability = new int[NUM_GAUSSIANS];
+    private final int[] mSpeechProbability = new int[NUM_GAUSSIANS];
+
+    /**
+     * Same as {@code WebRtcVad_Init}, resets all state and sets the least aggressive mode.
+     */
+    public int init() {
+        mVad = 1;
+        mFrameCounter = 0;
+        Arrays.fill(mLastFeatures, (short) 0);
+        mLastTotalPower = 0;
+        mLastLogLikelihoodRatio = 0;
+        mLastThreshold = 0;
+        mOverHang = 0;
+        mNumOfSpeech = 0;
+
+        Arrays.fill(mDownsamplingFilterStates, 0);
+
+        Arrays.fill(mState48To24, 0);
+        Arrays.fill(mState24To24, 0);
+        Arrays.fill(mState24To16, 0);
+        Arrays.fill(mState16To8, 0);
+
+        System.arraycopy(NOISE_DATA_MEANS, 0, mNoiseMeans, 0, TABLE_SIZE);
+        System.arraycopy(SPEECH_DATA_MEANS, 0, mSpeechMeans, 0, TABLE_SIZE);
+        System.arraycopy(NOISE_DATA_STDS, 0, mNoiseStds, 0, TABLE_SIZE);
+        System.arraycopy(SPEECH_DATA_STDS, 0, mSpeechStds, 0, TABLE_SIZE);
+
+        Arrays.fill(mLowValueVector, (short) 10000);
+        Arrays.fill(mIndexVector, (short) 0);
+
+        Arrays.fill(mUpperState, (short) 0);
+        Arrays.fill(mLowerState, (short) 0);
+        Arrays.fill(mHpFilterState, (short) 0);
+
+        Arrays.fill(mMeanValue, (short) 1600);
+
+        setModeCore(0);
+        mInitFlag = INIT_CHECK;
+
+        return 0;
+    }
+
+    /**
+     * Same as {@code WebRtcVad_set_mode}.
+     *
+     * @param mode aggressiveness, 0 to 3.
+     */
+    public int setMode(int mode) {
+        if (mInitFlag != INIT_CHECK) {
+            return -1;
+        }
+        return setModeCore(mode);
+    }
+
+    private int setModeCore(int mode) {
+        if (mode < 0 || mode >= MODES.length) {
+            return -1;
+        }
+
+        System.arraycopy(MODES[mode][0], 0, mOverHangMax1, 0, 3);
+        System.arraycopy(MODES[mode][1], 0, mOverHangMax2, 0, 3);
+        System.arraycopy(MODES[mode][2], 0, mIndividual, 0, 3);
+        System.arraycopy(MODES[mode][3], 0, mTotal, 0, 3);
+        return 0;
+    }
+
+    /**
+     * Same as {@code WebRtcVad_Process}.
+     *
+     * @return 1 for voice, 0 for no voice and -1 on error.
+     */
+    public int process(int fs, @NonNull short[] frame, int offset, int frameLength) {
+        if (mInitFlag != INIT_CHECK) {
+            return -1;
+        }
+        if (!isValidRateAndFrameLength(fs, frameLength)) {
+            return -1;
+        }
+
+        int vad;
+        if (fs == 48000) {
+            vad = calcVad48khz(frame, offset, frameLength);
+
+        } else if (fs == 32000) {
+            vad = calcVad32khz(frame, offset, frameLength);
+
+        } else if (fs == 16000) {
+            vad = calcVad16khz(frame, offset, frameLength);
+
+        } else {
+            vad = calcVad8khz(frame, offset, frameLength);
+        }
+
+        return vad > 0 ? 1 : vad;
+    }
+
+    public static boolean isValidRateAndFrameLength(int rate, int frameLength) {
+        if (rate != 8000 && rate != 16000 && rate != 32000 && rate != 48000) {
+            return false;
+        }
+        for (int ms = 10; ms <= 30; ms += 10) {
+            if (frameLength == rate / 1000 * ms) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the scores of the last frame, see {@code VadScores} for the layout.
+     */
+    public void getScores(@NonNull int[] scores) {
+        int i = 0;
+        scores[i++] = mLastLogLikelihoodRatio;
+        scores[i++] = mLastThreshold;
+        scores[i++] = mLastTotalPower;
+        for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+            scores[i++] = mLastFeatures[channel];
+        }
+        for (int k = 0; k < TABLE_SIZE; k++) {
+            scores[i + k] = mNoiseMeans[k];
+            scores[i + TABLE_SIZE + k] = mSpeechMeans[k];
+        }
+    }
+
+    // vad_core.c
+
+    private int calcVad48khz(short[] frame, int offset, int frameLength) {
+        Arrays.fill(mTmpMem, 0);
+        int num10msFrames = frameLength / 480;
+
+        for (int i = 0; i < num10msFrames; i++) {
+            // The C code passes the start of the frame every time, not the i-th 10 ms of it
+            resample48khzTo8khz(frame, offset, mSpeechNB, i * 80);
+        }
+
+        return calcVad8khz(mSpeechNB, 0, frameLength / 6);
+    }
+
+    private int calcVad32khz(short[] frame, int offset, int frameLength) {
+        downsampling(frame, offset, mSpeechWB, 2, frameLength);
+        int len = frameLength >> 1;
+
+        downsampling(mSpeechWB, 0, mSpeechNB, 0, len);
+        len >>= 1;
+
+        return calcVad8khz(mSpeechNB, 0, len);
+    }
+
+    private int calcVad16khz(short[] frame, int offset, int frameLength) {
+        downsampling(frame, offset, mSpeechNB, 0, frameLength);
+
+        return calcVad8khz(mSpeechNB, 0, frameLength >> 1);
+    }
+
+    private int calcVad8khz(short[] frame, int offset, int frameLength) {
+        short totalPower = calculateFeatures(frame, offset, frameLength, mFeatures);
+
+        System.arraycopy(mFeatures, 0, mLastFeatures, 0, NUM_CHANNELS);
+        mLastTotalPower = totalPower;
+
+        mVad = gmmProbability(mFeatures, totalPower, frameLength);
+        return mVad;
+    }
+
+    private static int weightedAverage(short[] data, int index, int offset, short[] weights) {
+        int weightedAverage = 0;
+
+        for (int k = 0; k < NUM_GAUSSIANS; k++) {
+            int i = index + k * NUM_CHANNELS;
+            data[i] = (short) (data[i] + offset);
+            weightedAverage += data[i] * weights[i];
+        }
+        return weightedAverage;
+    }
+
+    private short gmmProbability(short[] features, short totalPower, int frameLength) {
+        short vadflag = 0;
+        int sumLogLikelihoodRatios = 0;
+        int overhead1, overhead2, individualTest, totalTest;
+
+        int lengthIndex = frameLength == 80 ? 0 : frameLength == 160 ? 1 : 2;
+        overhead1 = mOverHangMax1[lengthIndex];
+        overhead2 = mOverHangMax2[lengthIndex];
+        individualTest = mIndividual[lengthIndex];
+        totalTest = mTotal[lengthIndex];
+
+        Arrays.fill(mNgprvec, (short) 0);
+        Arrays.fill(mSgprvec, (short) 0);
+
+        if (totalPower > MIN_ENERGY) {
+            for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+                int h0Test = 0;
+                int h1Test = 0;
+                for (int k = 0; k < NUM_GAUSSIANS; k++) {
+                    int gaussian = channel + k * NUM_CHANNELS;
+
+                    int tmp1 = gaussianProbability(features[channel], mNoiseMeans[gaussian],
+                            mNoiseStds[gaussian], mDeltaN, gaussian);
+                    mNoiseProbability[k] = NOISE_DATA_WEIGHTS[gaussian] * tmp1;
+                    h0Test += mNoiseProbability[k];
+
+                    tmp1 = gaussianProbability(features[channel], mSpeechMeans[gaussian],
+                            mSpeechStds[gaussian], mDeltaS, gaussian);
+                    mSpeechProbability[k] = SPEECH_DATA_WEIGHTS[gaussian] * tmp1;
+                    h1Test += mSpeechProbability[k];
+                }
+
+                int shiftsH0 = normW32(h0Test);
+                int shiftsH1 = normW32(h1Test);
+                if (h0Test == 0) {
+                    shiftsH0 = 31;
+                }
+                if (h1Test == 0) {
+                    shiftsH1 = 31;
+                }
+                short logLikelihoodRatio = (short) (shiftsH0 - shiftsH1);
+
+                sumLogLikelihoodRatios += logLikelihoodRatio * SPECTRUM_WEIGHT[channel];
+
+                if ((logLikelihoodRatio << 2) > individualTest) {
+                    vadflag = 1;
+                }
+
+                short h0 = (short) (h0Test >> 12);
+                if (h0 > 0) {
+                    int tmp1 = (mNoiseProbability[0] & 0xFFFFF000) << 2;
+                    mNgprvec[channel] = (short) divW32W16(tmp1, h0);
+                    mNgprvec[channel + NUM_CHANNELS] = (short) (16384 - mNgprvec[channel]);
+
+                } else {
+                    mNgprvec[channel] = 16384;
+                }
+
+                short h1 = (short) (h1Test >> 12);
+                if (h1 > 0) {
+                    int tmp1 = (mSpeechProbability[0] & 0xFFFFF000) << 2;
+                    mSgprvec[channel] = (short) divW32W16(tmp1, h1);
+                    mSgprvec[channel + NUM_CHANNELS] = (short) (16384 - mSgprvec[channel]);
+                }
+            }
+
+            if (sumLogLikelihoodRatios >= totalTest) {
+                vadflag |= 1;
+            }
+
+            // Update the model parameters
+            short maxspe = 12800;
+            for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+                short featureMinimum = findMinimum(features[channel], channel);
+
+                int noiseGlobalMean = weightedAverage(mNoiseMeans, channel, 0, NOISE_DATA_WEIGHTS);
+                short tmp1s16 = (short) (noiseGlobalMean >> 6);
+
+                for (int k = 0; k < NUM_GAUSSIANS; k++) {
+                    int gaussian = channel + k * NUM_CHANNELS;
+
+                    short nmk = mNoiseMeans[gaussian];
+                    short smk = mSpeechMeans[gaussian];
+                    short nsk = mNoiseStds[gaussian];
+                    short ssk = mSpeechStds[gaussian];
+
+                    short nmk2 = nmk;
+                    if (vadflag == 0) {
+                        short delt = (short) mul16Rsft(mNgprvec[gaussian], mDeltaN[gaussian], 11);
+                        nmk2 = (short) (nmk + (short) mul16Rsft(delt, NOISE_UPDATE_CONST, 22));
+                    }
+
+                    // Long term correction of the noise mean
+                    short ndelt = (short) ((featureMinimum << 4) - tmp1s16);
+                    short nmk3 = (short) (nmk2 + (short) mul16Rsft(ndelt, BACK_ETA, 9));
+
+                    short tmps16 = (short) ((k + 5) << 7);
+                    if (nmk3 < tmps16) {
+                        nmk3 = tmps16;
+                    }
+                    tmps16 = (short) ((72 + k - channel) << 7);
+                    if (nmk3 > tmps16) {
+                        nmk3 = tmps16;
+                    }
+                    mNoiseMeans[gaussian] = nmk3;
+
+                    if (vadflag != 0) {
+                        short delt = (short) mul16Rsft(mSgprvec[gaussian], mDeltaS[gaussian], 11);
+                        tmps16 = (short) mul16Rsft(delt, SPEECH_UPDATE_CONST, 21);
+                        short smk2 = (short) (smk + ((tmps16 + 1) >> 1));
+
+                        // Control that the speech mean does not drift too much
+                        int maxmu = maxspe + 640;
+                        if (smk2 < MINIMUM_MEAN[k]) {
+                            smk2 = MINIMUM_MEAN[k];
+                        }
+                        if (smk2 > maxmu) {
+                            smk2 = (short) maxmu;
+                        }
+                        mSpeechMeans[gaussian] = smk2;
+
+                        tmps16 = (short) ((smk + 4) >> 3);
+                        tmps16 = (short) (features[channel] - tmps16);
+                        int tmp1s32 = mul16Rsft(mDeltaS[gaussian], tmps16, 3);
+                        int tmp2s32 = tmp1s32 - 4096;
+                        tmps16 = (short) (mSgprvec[gaussian] >> 2);
+                        tmp1s32 = tmps16 * tmp2s32;
+                        tmp2s32 = tmp1s32 >> 4;
+
+                        if (tmp2s32 > 0) {
+                            tmps16 = (short) divW32W16(tmp2s32, ssk * 10);
+
+                        } else {
+                            tmps16 = (short) divW32W16(-tmp2s32, ssk * 10);
+                            tmps16 = (short) -tmps16;
+                        }
+                        tmps16 = (short) (tmps16 + 128);
+                        ssk = (short) (ssk + (tmps16 >> 8));
+                        if (ssk < MIN_STD) {
+                            ssk = MIN_STD;
+                        }
+                        mSpeechStds[gaussian] = ssk;
+
+                    } else {
+                        tmps16 = (short) (features[channel] - (nmk >> 3));
+                        int tmp1s32 = mul16Rsft(mDeltaN[gaussian], tmps16, 3);
+                        tmp1s32 -= 4096;
+
+                        tmps16 = (short) ((mNgprvec[gaussian] + 2) >> 2);
+                        int tmp2s32 = tmps16 * tmp1s32;
+                        tmp1s32 = tmp2s32 >> 14;
+
+                        if (tmp1s32 > 0) {
+                            tmps16 = (short) divW32W16(tmp1s32, nsk);
+
+                        } else {
+                            tmps16 = (short) divW32W16(-tmp1s32, nsk);
+                            tmps16 = (short) -tmps16;
+                        }
+                        tmps16 = (short) (tmps16 + 32);
+                        nsk = (short) (nsk + (tmps16 >> 6));
+                        if (nsk < MIN_STD) {
+                            nsk = MIN_STD;
+                        }
+                        mNoiseStds[gaussian] = nsk;
+                    }
+                }
+
+                // Separate models if they are too close
+                noiseGlobalMean = weightedAverage(mNoiseMeans, channel, 0, NOISE_DATA_WEIGHTS);
+                int speechGlobalMean = weightedAverage(mSpeechMeans, channel, 0, SPEECH_DATA_WEIGHTS);
+
+                short diff = (short) ((short) (speechGlobalMean >> 9) - (short) (noiseGlobalMean >> 9));
+                if (diff < MINIMUM_DIFFERENCE[channel]) {
+                    short tmps16 = (short) (MINIMUM_DIFFERENCE[channel] - diff);
+
+                    short tmp1 = (short) mul16Rsft(13, tmps16, 2);
+                    short tmp2 = (short) mul16Rsft(3, tmps16, 2);
+
+                    speechGlobalMean = weightedAverage(mSpeechMeans, channel, tmp1, SPEECH_DATA_WEIGHTS);
+                    noiseGlobalMean = weightedAverage(mNoiseMeans, channel, (short) -tmp2, NOISE_DATA_WEIGHTS);
+                }
+
+                // Control that the speech & noise means do not drift too much
+                maxspe = MAXIMUM_SPEECH[channel];
+                short tmp2s16 = (short) (speechGlobalMean >> 7);
+                if (tmp2s16 > maxspe) {
+                    tmp2s16 -= maxspe;
+
+                    for (int k = 0; k < NUM_GAUSSIANS; k++) {
+                        int i = channel + k * NUM_CHANNELS;
+                        mSpeechMeans[i] = (short) (mSpeechMeans[i] - tmp2s16);
+                    }
+                }
+
+                tmp2s16 = (short) (noiseGlobalMean >> 7);
+                if (tmp2s16 > MAXIMUM_NOISE[channel]) {
+                    tmp2s16 -= MAXIMUM_NOISE[channel];
+
+                    for (int k = 0; k < NUM_GAUSSIANS; k++) {
+                        int i = channel + k * NUM_CHANNELS;
+                        mNoiseMeans[i] = (short) (mNoiseMeans[i] - tmp2s16);
+                    }
+                }
+            }
+            mFrameCounter++;
+        }
+
+        mLastLogLikelihoodRatio = sumLogLikelihoodRatios;
+        mLastThreshold = (short) totalTest;
+
+        // Smooth with respect to transition hysteresis
+        if (vadflag == 0) {
+            if (mOverHang > 0) {
+                vadflag = (short) (2 + mOverHang);
+                mOverHang--;
+            }
+            mNumOfSpeech = 0;
+
+        } else {
+            mNumOfSpeech++;
+            if (mNumOfSpeech > MAX_SPEECH_FRAMES) {
+                mNumOfSpeech = MAX_SPEECH_FRAMES;
+                mOverHang = (short) overhead2;
+
+            } else {
+                mOverHang = (short) overhead1;
+            }
+        }
+        return vadflag;
+    }
+
+    // vad_filterbank.c
+
+    private void highPassFilter(short[] in, int length, short[] state, short[] out) {
+        for (int i = 0; i < length; i++) {
+            int tmp32 = mul16(HP_ZERO_COEFS[0], in[i]);
+            tmp32 += mul16(HP_ZERO_COEFS[1], state[0]);
+            tmp32 += mul16(HP_ZERO_COEFS[2], state[1]);
+            state[1] = state[0];
+            state[0] = in[i];
+
+            tmp32 -= mul16(HP_POLE_COEFS[1], state[2]);
+            tmp32 -= mul16(HP_POLE_COEFS[2], state[3]);
+            state[3] = state[2];
+            state[2] = (short) (tmp32 >> 14);
+            out[i] = state[2];
+        }
+    }
+
+    private static void allPassFilter(short[] in, int inOffset, int length, int coefficient,
+                                      short[] state, int stateIndex, short[] out) {
+        int state32 = state[stateIndex] << 16;
+
+        for (int i = 0; i < length; i++) {
+            short x = in[inOffset + 2 * i];
+            int tmp32 = state32 + mul16(coefficient, x);
+            short tmp16 = (short) (tmp32 >> 16);
+            out[i] = tmp16;
+            state32 = x << 14;
+            state32 -= mul16(coefficient, tmp16);
+            state32 <<= 1;
+        }
+
+        state[stateIndex] = (short) (state32 >> 16);
+    }
+
+    private void splitFilter(short[] in, int inOffset, int length, int band, short[] hpOut,
+                             short[] lpOut) {
+        int halfLength = length >> 1;
+
+        allPassFilter(in, inOffset, halfLength, ALL_PASS_COEFS_Q15[0], mUpperState, band, hpOut);
+        allPassFilter(in, inOffset + 1, halfLength, ALL_PASS_COEFS_Q15[1], mLowerState, band, lpOut);
+
+        for (int i = 0; i < halfLength; i++) {
+            short tmp = hpOut[i];
+            hpOut[i] = (short) (hpOut[i] - lpOut[i]);
+            lpOut[i] = (short) (lpOut[i] + tmp);
+        }
+    }
+
+    private void logOfEnergy(short[] in, int length, short offset, short[] logEnergy, int band) {
+        int scaling = getScalingSquare(in, length, length);
+        int energy = 0;
+        for (int i = 0; i < length; i++) {
+            energy += mul16(in[i], in[i]) >> scaling;
+        }
+        int totRshifts = scaling;
+
+        if (energy == 0) {
+            logEnergy[band] = offset;
+            return;
+        }
+
+        int normalizingRshifts = 17 - Integer.numberOfLeadingZeros(energy);
+        short log2Energy = LOG_ENERGY_INT_PART;
+
+        totRshifts += normalizingRshifts;
+        if (normalizingRshifts < 0) {
+            energy <<= -normalizingRshifts;
+
+        } else {
+            energy >>>= normalizingRshifts;
+        }
+
+        log2Energy = (short) (log2Energy + ((energy & 0x00003FFF) >>> 4));
+
+        short value = (short) (mul16Rsft(LOG_CONST, log2Energy, 19) +
+                mul16Rsft(totRshifts, LOG_CONST, 9));
+        if (value < 0) {
+            value = 0;
+        }
+        logEnergy[band] = (short) (value + offset);
+
+        if (mTotalEnergy <= MIN_ENERGY) {
+            if (totRshifts >= 0) {
+                mTotalEnergy = (short) (mTotalEnergy + MIN_ENERGY + 1);
+
+            } else {
+                mTotalEnergy = (short) (mTotalEnergy + (short) (energy >>> -totRshifts));
+            }
+        }
+    }
+
+    private short calculateFeatures(short[] in, int offset, int length, short[] features) {
+        mTotalEnergy = 0;
+        int halfLength = length >> 1;
+        int len = halfLength;
+
+        // [0 - 4000] Hz to [2000 - 4000] and [0 - 2000] Hz
+        splitFilter(in, offset, length, 0, mHp120, mLp120);
+
+        // [2000 - 4000] Hz to [3000 - 4000] and [2000 - 3000] Hz
+        splitFilter(mHp120, 0, len, 1, mHp60, mLp60);
+
+        len >>= 1;
+        logOfEnergy(mHp60, len, OFFSET_VECTOR[5], features, 5);
+        logOfEnergy(mLp60, len, OFFSET_VECTOR[4], features, 4);
+
+        // [0 - 2000] Hz to [1000 - 2000] and [0 - 1000] Hz
+        len = halfLength;
+        splitFilter(mLp120, 0, len, 2, mHp60, mLp60);
+
+        len >>= 1;
+        logOfEnergy(mHp60, len, OFFSET_VECTOR[3], features, 3);
+
+        // [0 - 1000] Hz to [500 - 1000] and [0 - 500] Hz
+        splitFilter(mLp60, 0, len, 3, mHp120, mLp120);
+
+        len >>= 1;
+        logOfEnergy(mHp120, len, OFFSET_VECTOR[2], features, 2);
+
+        // [0 - 500] Hz to [250 - 500] and [0 - 250] Hz
+        splitFilter(mLp120, 0, len, 4, mHp60, mLp60);
+
+        len >>= 1;
+        logOfEnergy(mHp60, len, OFFSET_VECTOR[1], features, 1);
+
+        // Remove 0 - 80 Hz
+        highPassFilter(mLp60, len, mHpFilterState, mHp120);
+        logOfEnergy(mHp120, len, OFFSET_VECTOR[0], features, 0);
+
+        return mTotalEnergy;
+    }
+
+    // vad_gmm.c
+
+    private static int gaussianProbability(short input, short mean, short std,
+                                           short[] delta, int deltaIndex) {
+        int tmp32 = 131072 + (std >> 1);
+        short invStd = (short) divW32W16(tmp32, std);
+
+        short tmp16 = (short) (invStd >> 2);
+        short invStd2 = (short) mul16Rsft(tmp16, tmp16, 2);
+
+        tmp16 = (short) (input << 3);
+        tmp16 = (short) (tmp16 - mean);
+
+        delta[deltaIndex] = (short) mul16Rsft(invStd2, tmp16, 10);
+
+        tmp32 = mul16Rsft(delta[deltaIndex], tmp16, 9);
+
+        short expValue = 0;
+        if (tmp32 < COMP_VAR) {
+            tmp16 = (short) mul16Rsft(LOG2_EXP, (short) tmp32, 12);
+            tmp16 = (short) -tmp16;
+            expValue = (short) (0x0400 | (tmp16 & 0x03FF));
+            tmp16 = (short) (tmp16 ^ 0xFFFF);
+            tmp16 = (short) (tmp16 >> 10);
+            tmp16 = (short) (tmp16 + 1);
+            expValue = (short) (expValue >> tmp16);
+        }
+
+        return mul16(invStd, expValue);
+    }
+
+    // vad_sp.c
+
+    private void downsampling(short[] in, int inOffset, short[] out, int stateIndex, int inLength) {
+        int tmp32a = mDownsamplingFilterStates[stateIndex];
+        int tmp32b = mDownsamplingFilterStates[stateIndex + 1];
+        int halfLength = inLength >> 1;
+        int i = inOffset;
+
+        for (int n = 0; n < halfLength; n++) {
+            short tmp16a = (short) ((tmp32a >> 1) + mul16Rsft(ALL_PASS_COEFS_Q13[0], in[i], 14));
+            out[n] = tmp16a;
+            tmp32a = in[i++] - mul16Rsft(ALL_PASS_COEFS_Q13[0], tmp16a, 12);
+
+            short tmp16b = (short) ((tmp32b >> 1) + mul16Rsft(ALL_PASS_COEFS_Q13[1], in[i], 14));
+            out[n] = (short) (out[n] + tmp16b);
+            tmp32b = in[i++] - mul16Rsft(ALL_PASS_COEFS_Q13[1], tmp16b, 12);
+        }
+
+        mDownsamplingFilterStates[stateIndex] = tmp32a;
+        mDownsamplingFilterStates[stateIndex + 1] = tmp32b;
+    }
+
+    private short findMinimum(short featureValue, int channel) {
+        int offset = channel << 4;
+        short currentMedian = 1600;
+        int alpha = 0;
+
+        for (int i = 0; i < 16; i++) {
+            if (mIndexVector[offset + i] != 100) {
+                mIndexVector[offset + i]++;
+
+            } else {
+                for (int j = i; j < 15; j++) {
+                    mLowValueVector[offset + j] = mLowValueVector[offset + j + 1];
+                    mIndexVector[offset + j] = mIndexVector[offset + j + 1];
+                }
+                mIndexVector[offset + 15] = 101;
+                mLowValueVector[offset + 15] = 10000;
+            }
+        }
+
+        // The C code unrolls this as a binary search over the sorted values, a linear scan
+        // finds the same position
+        int position = -1;
+        for (int i = 0; i < 16; i++) {
+            if (featureValue < mLowValueVector[offset + i]) {
+                position = i;
+                break;
+            }
+        }
+
+        if (position > -1) {
+            for (int i = 15; i > position; i--) {
+                mLowValueVector[offset + i] = mLowValueVector[offset + i - 1];
+                mIndexVector[offset + i] = mIndexVector[offset + i - 1];
+            }
+            mLowValueVector[offset + position] = featureValue;
+            mIndexVector[offset + position] = 1;
+        }
+
+        if (mFrameCounter > 2) {
+            currentMedian = mLowValueVector[offset + 2];
+
+        } else if (mFrameCounter > 0) {
+            currentMedian = mLowValueVector[offset];
+        }
+
+        if (mFrameCounter > 0) {
+            if (currentMedian < mMeanValue[channel]) {
+                alpha = SMOOTHING_DOWN;
+
+            } else {
+                alpha = SMOOTHING_UP;
+            }
+        }
+        int tmp32 = mul16(alpha + 1, mMeanValue[channel]);
+        tmp32 += mul16(Short.MAX_VALUE - alpha, currentMedian);
+        tmp32 += 16384;
+        mMeanValue[channel] = (short) (tmp32 >> 15);
+
+        return mMeanValue[channel];
+    }
+
+    // resample_48khz.c, resample_by_2_internal.c and resample_fractional.c
+
+    private void resample48khzTo8khz(short[] in, int inOffset, short[] out, int outOffset) {
+        int[] tmp = mTmpMem;
+
+        downBy2ShortToInt(in, inOffset, 480, tmp, 256, mState48To24);
+
+        lpBy2IntToInt(tmp, 256, 240, tmp, 16, mState24To24);
+
+        System.arraycopy(mState24To16, 0, tmp, 8, 8);
+        System.arraycopy(tmp, 248, mState24To16, 0, 8);
+        resample48khzTo32khz(tmp, 8, tmp, 0, 80);
+
+        downBy2IntToShort(tmp, 0, 160, out, outOffset, mState16To8);
+    }
+
+    private static int allpassStep(int in, int[] state, int s, int[] coefs) {
+        int diff = in - state[s + 1];
+        diff = (diff + (1 << 13)) >> 14;
+        int tmp1 = state[s] + diff * coefs[0];
+        state[s] = in;
+        diff = tmp1 - state[s + 2];
+        diff = diff >> 14;
+        if (diff < 0) {
+            diff += 1;
+        }
+        int tmp0 = state[s + 1] + diff * coefs[1];
+        state[s + 1] = tmp1;
+        diff = tmp0 - state[s + 3];
+        diff = diff >> 14;
+        if (diff < 0) {
+            diff += 1;
+        }
+        state[s + 3] = state[s + 2] + diff * coefs[2];
+        state[s + 2] = tmp0;
+        return state[s + 3];
+    }
+
+    private static void downBy2ShortToInt(short[] in, int inOffset, int len, int[] out,
+                                          int outOffset, int[] state) {
+        len >>= 1;
+
+        for (int i = 0; i < len; i++) {
+            int tmp0 = (in[inOffset + (i << 1)] << 15) + (1 << 14);
+            out[outOffset + i] = allpassStep(tmp0, state, 0, RESAMPLE_ALLPASS[1]) >> 1;
+        }
+
+        for (int i = 0; i < len; i++) {
+            int tmp0 = (in[inOffset + (i << 1) + 1] << 15) + (1 << 14);
+            out[outOffset + i] += allpassStep(tmp0, state, 4, RESAMPLE_ALLPASS[0]) >> 1;
+        }
+    }
+
+    private static void downBy2IntToShort(int[] in, int inOffset, int len, short[] out,
+                                          int outOffset, int[] state) {
+        len >>= 1;
+
+        for (int i = 0; i < len; i++) {
+            int j = inOffset + (i << 1);
+            in[j] = allpassStep(in[j], state, 0, RESAMPLE_ALLPASS[1]) >> 1;
+        }
+
+        for (int i = 0; i < len; i++) {
+            int j = inOffset + (i << 1) + 1;
+            in[j] = allpassStep(in[j], state, 4, RESAMPLE_ALLPASS[0]) >> 1;
+        }
+
+        for (int i = 0; i < len; i++) {
+            int j = inOffset + (i << 1);
+            int tmp = (in[j] + in[j + 1]) >> 15;
+            if (tmp > 0x00007FFF) {
+                tmp = 0x00007FFF;
+            }
+            if (tmp < (short) 0x8000) {
+                tmp = (short) 0x8000;
+            }
+            out[outOffset + i] = (short) tmp;
+        }
+    }
+
+    private static void lpBy2IntToInt(int[] in, int inOffset, int len, int[] out, int outOffset,
+                                      int[] state) {
+        len >>= 1;
+
+        // Lower allpass filter: odd input -> even output samples, delayed by one
+        int tmp0 = state[12];
+        for (int i = 0; i < len; i++) {
+            out[outOffset + (i << 1)] = allpassStep(tmp0, state, 0, RESAMPLE_ALLPASS[1]) >> 1;
+            tmp0 = in[inOffset + 1 + (i << 1)];
+        }
+
+        // Upper allpass filter: even input -> even output samples
+        for (int i = 0; i < len; i++) {
+            int j = outOffset + (i << 1);
+            int filtered = allpassStep(in[inOffset + (i << 1)], state, 4, RESAMPLE_ALLPASS[0]);
+            out[j] = (out[j] + (filtered >> 1)) >> 15;
+        }
+
+        // Lower allpass filter: even input -> odd output samples
+        for (int i = 0; i < len; i++) {
+            out[outOffset + 1 + (i << 1)] =
+                    allpassStep(in[inOffset + (i << 1)], state, 8, RESAMPLE_ALLPASS[1]) >> 1;
+        }
+
+        // Upper allpass filter: odd input -> odd output samples
+        for (int i = 0; i < len; i++) {
+            int j = outOffset + 1 + (i << 1);
+            int filtered = allpassStep(in[inOffset + 1 + (i << 1)], state, 12, RESAMPLE_ALLPASS[0]);
+            out[j] = (out[j] + (filtered >> 1)) >> 15;
+        }
+    }
+
+    private static void resample48khzTo32khz(int[] in, int inOffset, int[] out, int outOffset,
+                                             int blocks) {
+        for (int m = 0; m < blocks; m++) {
+            int i = inOffset + 3 * m;
+            int o = outOffset + 2 * m;
+
+            int tmp = 1 << 14;
+            for (int k = 0; k < 8; k++) {
+                tmp += COEFFICIENTS_48_TO_32[0][k] * in[i + k];
+            }
+            out[o] = tmp;
+
+            tmp = 1 << 14;
+            for (int k = 0; k < 8; k++) {
+                tmp += COEFFICIENTS_48_TO_32[1][k] * in[i + 1 + k];
+            }
+            out[o + 1] = tmp;
+        }
+    }
+
+    // signal_processing_library.h
+
+    private static int mul16(int a, int b) {
+        return (short) a * (short) b;
+    }
+
+    private static int mul16Rsft(int a, int b, int c) {
+        return mul16(a, b) >> c;
+    }
+
+    private static int divW32W16(int num, int den) {
+        short d = (short) den;
+        return d != 0 ? num / d : 0x7FFFFFFF;
+    }
+
+    private static int normW32(int a) {
+        if (a == 0) {
+            return 0;
+        }
+        if (a < 0) {
+            a = ~a;
+        }
+        return Integer.numberOfLeadingZeros(a) - 1;
+    }
+
+    private static int getScalingSquare(short[] in, int length, int times) {
+        int nbits = 32 - Integer.numberOfLeadingZeros(times);
+        short smax = -1;
+
+        for (int i = 0; i < length; i++) {
+            short sabs = in[i] > 0 ? in[i] : (short) -in[i];
+            if (sabs > smax) {
+                smax = sabs;
+            }
+        }
+
+        if (smax == 0) {
+            return 0;
+        }
+        int t = normW32(smax * smax);
+        return t > nbits ? 0 : nbits - t;
+    }
+}
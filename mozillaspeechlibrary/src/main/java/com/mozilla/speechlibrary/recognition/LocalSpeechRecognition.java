@@ -1,25 +1,42 @@
 package com.mozilla.speechlibrary.recognition;
 
 import android.content.Context;
+import android.os.Process;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.mozilla.speechlibrary.MicLevelPublisher;
 import com.mozilla.speechlibrary.SpeechResultCallback;
 import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.mozilla.speechlibrary.audio.AudioSource;
 import com.mozilla.speechlibrary.stt.STTLocalClient;
 
+import java.util.concurrent.Executor;
+
 public class LocalSpeechRecognition extends SpeechRecognition {
 
     public LocalSpeechRecognition(@NonNull Context context) {
-        super(context);
+        this(context, null, null);
+    }
+
+    public LocalSpeechRecognition(@NonNull Context context,
+                                  @Nullable Executor callbackExecutor,
+                                  @Nullable MicLevelPublisher micLevels) {
+        super(context, callbackExecutor, micLevels);
     }
 
     @Override
     public void start(@NonNull SpeechServiceSettings settings,
+                      @Nullable AudioSource source,
                       @NonNull SpeechResultCallback callback) {
-        mStt = new STTLocalClient(mContext, settings, this);
-        Thread sttThread = new Thread((STTLocalClient)mStt, "STT Thread");
+        STTLocalClient client = new STTLocalClient(mContext, settings, this);
+        mStt = client;
+        Thread sttThread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+            client.run();
+        }, "STT Thread");
         sttThread.start();
-        super.start(settings, callback);
+        super.start(settings, source, callback);
     }
 }
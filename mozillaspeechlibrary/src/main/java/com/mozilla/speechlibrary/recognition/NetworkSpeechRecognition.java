@@ -5,26 +5,38 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.mozilla.speechlibrary.MicLevelPublisher;
 import com.mozilla.speechlibrary.SpeechResultCallback;
 import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.mozilla.speechlibrary.audio.AudioSource;
 import com.mozilla.speechlibrary.stt.STTGeckoNetworkClient;
 import com.mozilla.speechlibrary.stt.STTNetworkClient;
 
 import org.mozilla.geckoview.GeckoWebExecutor;
 
+import java.util.concurrent.Executor;
+
 public class NetworkSpeechRecognition extends SpeechRecognition {
 
     private GeckoWebExecutor mExecutor;
 
     public NetworkSpeechRecognition(@NonNull Context context,
                                     @Nullable GeckoWebExecutor executor) {
-        super(context);
+        this(context, executor, null, null);
+    }
+
+    public NetworkSpeechRecognition(@NonNull Context context,
+                                    @Nullable GeckoWebExecutor executor,
+                                    @Nullable Executor callbackExecutor,
+                                    @Nullable MicLevelPublisher micLevels) {
+        super(context, callbackExecutor, micLevels);
 
         mExecutor = executor;
     }
 
     @Override
     public void start(@NonNull SpeechServiceSettings settings,
+                      @Nullable AudioSource source,
                       @NonNull SpeechResultCallback callback) {
         if (mExecutor == null) {
             mStt = new STTNetworkClient(mContext, settings, this);
@@ -33,6 +45,6 @@ public class NetworkSpeechRecognition extends SpeechRecognition {
             mStt = new STTGeckoNetworkClient(mContext, settings, this, mExecutor);
         }
 
-        super.start(settings, callback);
+        super.start(settings, source, callback);
     }
 }
@@ -1,16 +1,27 @@
 package com.mozilla.speechlibrary.recognition;
 
 import android.content.Context;
-import android.media.AudioRecord;
-import android.os.Bundle;
 import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.github.axet.audiolibrary.encoders.Sound;
-import com.mozilla.speechlibrary.SpeechResultReceiver;
-import com.mozilla.speechlibrary.SpeechState;
+import com.mozilla.speechlibrary.MicLevelListener;
+import com.mozilla.speechlibrary.MicLevelPublisher;
+import com.mozilla.speechlibrary.SpeechEventDispatcher;
+import com.mozilla.speechlibrary.VadAdaptationListener;
+import com.mozilla.speechlibrary.audio.AudioPipeline;
+import com.mozilla.speechlibrary.audio.AudioRecordSource;
+import com.mozilla.speechlibrary.audio.AudioSource;
+import com.mozilla.speechlibrary.audio.Endpointer;
+import com.mozilla.speechlibrary.audio.EnergyGate;
+import com.mozilla.speechlibrary.audio.GainControl;
+import com.mozilla.speechlibrary.audio.MicLevelMeter;
+import com.mozilla.speechlibrary.audio.PreRollBuffer;
+import com.mozilla.speechlibrary.audio.ResamplingAudioSource;
+import com.mozilla.speechlibrary.audio.VadAdaptation;
 import com.mozilla.speechlibrary.stt.STTResult;
 import com.mozilla.speechlibrary.Vad;
 import com.mozilla.speechlibrary.SpeechResultCallback;
@@ -18,41 +29,78 @@ import com.mozilla.speechlibrary.SpeechServiceSettings;
 import com.mozilla.speechlibrary.stt.STTClient;
 import com.mozilla.speechlibrary.stt.STTClientCallback;
 
-import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
 
 public abstract class SpeechRecognition implements STTClientCallback {
 
-    private static final int SAMPLE_RATE = 16000;
+    private static final String TAG = SpeechRecognition.class.getSimpleName();
     private static final int CHANNELS = 1;
-    private static final int FRAME_SIZE = 160;
-    private static final int MAX_SILENCE = 1500;
-    private static final int MIN_VOICE = 250;
+    // Audio the queues between pipeline stages hold
+    private static final int PIPELINE_QUEUE_MS = 2000;
 
     @NonNull
     Context mContext;
     STTClient mStt;
     @NonNull
-    private SpeechResultReceiver mReceiver;
+    private Executor mExecutor;
+    @NonNull
+    private SpeechEventDispatcher mEvents;
     private SpeechResultCallback mDelegate;
     private Vad mVad;
-    private boolean mIsRunning;
-    private AudioRecord mRecorder;
-
-    SpeechRecognition(@NonNull Context context) {
+    private volatile boolean mIsRunning;
+    private AudioSource mSource;
+    private AudioPipeline mPipeline;
+    @NonNull
+    private MicLevelPublisher mMicLevels;
+    @Nullable
+    private volatile VadAdaptationListener mVadAdaptationListener;
+
+    /**
+     * @param callbackExecutor where callbacks and mic levels are delivered, the main thread if null.
+     */
+    SpeechRecognition(@NonNull Context context,
+                      @Nullable Executor callbackExecutor,
+                      @Nullable MicLevelPublisher micLevels) {
         mContext = context;
-        mReceiver = new SpeechResultReceiver(new Handler(context.getMainLooper()));
+        mExecutor = callbackExecutor != null ?
+                callbackExecutor : new Handler(context.getMainLooper())::post;
+        mEvents = new SpeechEventDispatcher(mExecutor);
+        mMicLevels = micLevels != null ? micLevels : new MicLevelPublisher(mExecutor);
+    }
+
+    public void setVadAdaptationListener(@Nullable VadAdaptationListener listener) {
+        mVadAdaptationListener = listener;
     }
 
-    public void start(@NonNull SpeechServiceSettings settings, @NonNull SpeechResultCallback callback) {
+    /**
+     * Runs a recognition session on the calling thread.
+     *
+     * @param source audio to recognize, the microphone if null. It must deliver mono audio at
+     *               {@link SpeechServiceSettings#getSampleRate()}, or audio a
+     *               {@link com.mozilla.speechlibrary.audio.NativeResampler} converts to it.
+     */
+    public void start(@NonNull SpeechServiceSettings settings,
+                      @Nullable AudioSource source,
+                      @NonNull SpeechResultCallback callback) {
         mDelegate = callback;
-        mReceiver.addReceiver(mDelegate);
+        mEvents.addListener(mDelegate);
         mIsRunning = true;
-        mVad = new Vad();
-
-        boolean done = false;
+        int sampleRate = settings.getSampleRate();
+        Vad vad = createVad(sampleRate, settings.getVadMode());
+        mVad = vad;
+        FrameAnalysis analysis = null;
+
+        if (settings.getMicActivityRate() != MicLevelPublisher.DISABLED) {
+            mMicLevels.subscribe(
+                    mMicActivityListener,
+                    settings.getMicActivityRate(),
+                    settings.getMicActivityAggregation());
+        }
 
         try {
-            int retVal = mVad.start();
+            int retVal = vad.start();
             if (retVal < 0) {
                 throw new Exception("Error Initializing VAD: " + retVal);
             }
@@ -61,100 +109,239 @@ public abstract class SpeechRecognition implements STTClientCallback {
                 return;
             }
 
-            long samplesVoice = 0;
-            long samplesSilence = 0;
-            boolean touchedVoice = false;
-            boolean touchedSilence = false;
-            int vad;
-            long dtantes = System.currentTimeMillis();
-            long dtantesmili = 	System.currentTimeMillis();
-            boolean raisenovoice = false;
+            Endpointer endpointer = new Endpointer(
+                    sampleRate,
+                    settings.getHangoverMs(),
+                    settings.getMinSpeechMs(),
+                    settings.getMaxUtteranceMs());
+
+            // The loop works on locals, stop() may release the fields from another thread
+            if (source == null) {
+                source = new AudioRecordSource(
+                        settings.getCaptureSampleRate(),
+                        settings.getCaptureChannels());
+            }
+            if (source.getSampleRate() != sampleRate || source.getChannels() != CHANNELS) {
+                // Downmixed and decimated natively, throws if the format can't be converted
+                source = new ResamplingAudioSource(source, settings.getVadFrameMs());
+            }
+            if (source.getSampleRate() != sampleRate) {
+                throw new IllegalArgumentException("Unsupported audio source format: " +
+                        source.getSampleRate() + " Hz, " + source.getChannels() + " channels");
+            }
+            mSource = source;
+            source.start();
+
+            // Everything the stages touch is allocated up front, the frame buffers are reused
+            // for every read and mStt.encode must copy them if it needs them past the call.
+            int frameLength = sampleRate * settings.getVadFrameMs() / 1000 * CHANNELS;
+            analysis = new FrameAnalysis(settings, vad, endpointer, frameLength);
+
+            AudioPipeline pipeline = new AudioPipeline(
+                    settings.getPipelineThreading(),
+                    frameLength,
+                    sampleRate * PIPELINE_QUEUE_MS / 1000 * CHANNELS,
+                    settings.getAudioOverflowPolicy(),
+                    mPipelineThreads);
+            mPipeline = pipeline;
+
+            // An armed session opens the encoder once there is speech to encode
+            if (!analysis.isArmed()) {
+                analysis.startEncoding();
+            }
+            mCallback.onStartListen();
 
-            mRecorder = Sound.getAudioRecord(CHANNELS, SAMPLE_RATE);
-            mRecorder.startRecording();
+            pipeline.run(source, analysis, mStt::encode);
 
-            mStt.initEncoding(SAMPLE_RATE);
-            mCallback.onStartListen();
+            boolean encoded = analysis.mEncoding;
+            if (encoded) {
+                analysis.mEncoding = false;
+                mStt.endEncoding();
+            }
 
-            while (mIsRunning && !done) {
-                int nshorts = 0;
+            log("Pipeline: " + pipeline);
 
-                short[] mBufTemp = new short[FRAME_SIZE * CHANNELS * 2];
-                nshorts = mRecorder.read(mBufTemp, 0, mBufTemp.length);
+            if (analysis.mEnergyGate != null) {
+                EnergyGate energyGate = analysis.mEnergyGate;
+                log("VAD pre-gate skipped " + energyGate.getSkippedFrames() + " of " +
+                        energyGate.getFrames() + " frames, noise floor " +
+                        Math.round(energyGate.getNoiseFloorDbfs()) + " dBFS");
+            }
 
-                vad = mVad.feed(mBufTemp, nshorts);
-                double[] fft =  Sound.fft(mBufTemp, 0, nshorts);
-                double fftsum = Arrays.stream(fft).sum()/fft.length;
+            if (analysis.mAdaptation != null) {
+                VadAdaptation adaptation = analysis.mAdaptation;
+                long latency = endpointer.hasSpeech() ?
+                        endpointer.samplesToMs(endpointer.getTotalSamples() - endpointer.getLastSpeechSample()) : -1;
+                log("VAD adaptation: " + adaptation.getChanges() + " switches, ended " +
+                        adaptation.getEnvironment() + ", end of speech latency " + latency + " ms");
+            }
 
-                mCallback.onMicActivity(fftsum);
+            if (endpointer.getState() == Endpointer.State.NO_VOICE || !encoded) {
+                mStt.cancel();
+                mCallback.onNoVoice();
 
-                long dtdepois = System.currentTimeMillis();
+            } else {
+                mStt.process();
+            }
 
-                if (vad == 0) {
-                    if (touchedVoice) {
-                        samplesSilence += dtdepois - dtantesmili;
-                        if (samplesSilence > MAX_SILENCE) touchedSilence = true;
-                    }
+        } catch (Exception exc) {
+            if (analysis != null && analysis.mEncoding) {
+                mStt.endEncoding();
+            }
+            // Also ends the local decoder thread, which is waiting for audio since before start()
+            mStt.cancel();
+            mCallback.onError(SpeechResultCallback.SPEECH_ERROR, exc.getLocalizedMessage());
+            exc.printStackTrace();
 
-                } else {
-                    samplesVoice  += dtdepois - dtantesmili;
-                    if (samplesVoice > MIN_VOICE) touchedVoice = true;
+        } finally {
+            releaseResources();
+        }
+    }
 
-                    for (int i = 0; i < mBufTemp.length; ++i) {
-                        mBufTemp[i] *= 5.0;
-                    }
-                }
-                dtantesmili = dtdepois;
+    /**
+     * The analysis stage: VAD, endpointer, metering, gain and pre-roll, one frame at a time.
+     */
+    private class FrameAnalysis implements AudioPipeline.Analysis {
+
+        private final int mSampleRate;
+        private final Vad mVad;
+        private final Endpointer mEndpointer;
+        private final MicLevelMeter mLevelMeter;
+        private final GainControl mGainControl;
+        private final EnergyGate mEnergyGate;
+        private final VadAdaptation mAdaptation;
+        // Armed until the endpointer hears speech, only the pre-roll is kept meanwhile
+        private PreRollBuffer mPreRoll;
+        private short[] mPreRollChunk;
+        private int mVadResult;
+        // Whether the client has an encoder open that has to be closed. Set by the analysis
+        // thread, read by the capture thread after the pipeline joined it.
+        boolean mEncoding;
+
+        FrameAnalysis(@NonNull SpeechServiceSettings settings,
+                      @NonNull Vad vad,
+                      @NonNull Endpointer endpointer,
+                      int frameLength) {
+            mSampleRate = settings.getSampleRate();
+            mVad = vad;
+            mEndpointer = endpointer;
+            mLevelMeter = new MicLevelMeter(
+                    frameLength,
+                    settings.getMicLevelMode(),
+                    mSampleRate,
+                    MicLevelMeter.DEFAULT_BAND_EDGES);
+
+            mGainControl = new GainControl(
+                    settings.getGainMode(),
+                    mSampleRate,
+                    frameLength / CHANNELS);
+
+            // Also holds the speech the endpointer needs to hear before it fires
+            if (settings.getPreRollMs() > 0) {
+                int preRollMs = settings.getPreRollMs() + settings.getMinSpeechMs();
+                mPreRoll = new PreRollBuffer(preRollMs * mSampleRate / 1000 * CHANNELS);
+                mPreRollChunk = new short[frameLength];
+            }
 
-                mStt.encode(mBufTemp, 0, nshorts);
+            mEnergyGate = settings.useVadPreGate() ? new EnergyGate(mSampleRate) : null;
 
-                if (touchedVoice && touchedSilence) {
-                    done = true;
-                }
+            mAdaptation = settings.useAdaptiveVad() ?
+                    new VadAdaptation(mSampleRate, settings.getVadMode(), settings.getHangoverMs()) :
+                    null;
+        }
 
-                int mUpperLimit = 10;
-                if ((dtdepois - dtantes)/1000 > mUpperLimit) {
-                    done = true;
-                    if (!touchedVoice) {
-                        raisenovoice = true;
-                    }
-                }
+        boolean isArmed() {
+            return mPreRoll != null;
+        }
+
+        void startEncoding() {
+            mStt.initEncoding(mSampleRate);
+            mEncoding = true;
+        }
 
-                if (nshorts <= 0)
-                    break;
+        @Override
+        public boolean process(@NonNull short[] frame, int nshorts, @NonNull AudioPipeline.Sink out) {
+            if (mEnergyGate == null || !mEnergyGate.isSilence(frame, 0, nshorts, mVadResult == 0)) {
+                mVadResult = mVad.feed(frame, nshorts);
+            }
+            boolean voice = mVadResult > 0;
+            if (mAdaptation != null && mAdaptation.update(frame, 0, nshorts, voice)) {
+                mVad.setMode(mAdaptation.getMode());
+                mEndpointer.setHangoverMs(mAdaptation.getHangoverMs());
+                notifyVadAdaptation(mAdaptation);
+            }
+            if (mMicLevels.hasSubscribers()) {
+                mMicLevels.publish(
+                        mLevelMeter.process(frame, 0, nshorts),
+                        nshorts / CHANNELS,
+                        mSampleRate);
             }
 
-            mStt.endEncoding();
+            mEndpointer.feed(voice, nshorts / CHANNELS);
 
-            if (raisenovoice) {
-                mCallback.onNoVoice();
+            mGainControl.process(frame, 0, nshorts, voice);
+
+            if (mPreRoll != null && !mEndpointer.hasSpeech()) {
+                mPreRoll.write(frame, 0, nshorts);
 
             } else {
-                mStt.process();
+                if (mPreRoll != null) {
+                    startEncoding();
+                    int read;
+                    while ((read = mPreRoll.read(mPreRollChunk, 0, mPreRollChunk.length)) > 0) {
+                        out.write(mPreRollChunk, 0, read);
+                    }
+                    mPreRoll = null;
+                }
+
+                out.write(frame, 0, nshorts);
             }
 
-        } catch (Exception exc) {
-            mStt.endEncoding();
-            mCallback.onError(SpeechResultCallback.SPEECH_ERROR, exc.getLocalizedMessage());
-            exc.printStackTrace();
+            return mIsRunning && !mEndpointer.isDone();
+        }
+    }
 
-        } finally {
-            releaseResources();
+    private void notifyVadAdaptation(@NonNull VadAdaptation adaptation) {
+        VadAdaptationListener listener = mVadAdaptationListener;
+        if (listener == null) {
+            return;
         }
+
+        VadAdaptation.Environment environment = adaptation.getEnvironment();
+        Vad.Mode mode = adaptation.getMode();
+        int hangoverMs = adaptation.getHangoverMs();
+        double noiseDbfs = adaptation.getNoiseDbfs();
+        double snrDb = adaptation.getSnrDb();
+        long timeMs = adaptation.getTimeMs();
+        mExecutor.execute(() ->
+                listener.onVadAdaptation(environment, mode, hangoverMs, noiseDbfs, snrDb, timeMs));
+    }
+
+    Vad createVad(int sampleRate, @NonNull Vad.Mode mode) {
+        return new Vad(sampleRate, mode);
+    }
+
+    void log(@NonNull String message) {
+        Log.d(TAG, message);
     }
 
+    private final ThreadFactory mPipelineThreads = runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        runnable.run();
+    });
+
+    private final MicLevelListener mMicActivityListener = level -> mEvents.notifyMicActivity(level);
+
     private void releaseResources() {
-        if (mRecorder != null) {
-            try {
-                mRecorder.stop();
+        mMicLevels.unsubscribe(mMicActivityListener);
 
-            } catch (IllegalStateException e) {
-                e.printStackTrace();
+        if (mPipeline != null) {
+            mPipeline.stop();
+        }
 
-            } finally {
-                mRecorder.release();
-                mRecorder = null;
-            }
+        if (mSource != null) {
+            mSource.stop();
+            mSource = null;
         }
 
         if (mVad != null) {
@@ -164,7 +351,9 @@ public abstract class SpeechRecognition implements STTClientCallback {
     }
 
     public void stop() {
-        mReceiver.removeReceiver(mDelegate);
+        if (mDelegate != null) {
+            mEvents.removeListener(mDelegate);
+        }
 
         mIsRunning = false;
 
@@ -175,6 +364,14 @@ public abstract class SpeechRecognition implements STTClientCallback {
         return mIsRunning;
     }
 
+    /**
+     * The pipeline of the current or the last session, for its stage metrics.
+     */
+    @Nullable
+    public AudioPipeline getPipeline() {
+        return mPipeline;
+    }
+
     // STTClientCallback
 
     @Override
@@ -187,6 +384,11 @@ public abstract class SpeechRecognition implements STTClientCallback {
         mCallback.onSTTResult(result);
     }
 
+    @Override
+    public void onSTTPartial(@NonNull STTResult result) {
+        mCallback.onPartialResult(result);
+    }
+
     @Override
     public void onSTTError(@NonNull String error) {
         mCallback.onError(SpeechResultCallback.SPEECH_ERROR, error);
@@ -198,44 +400,40 @@ public abstract class SpeechRecognition implements STTClientCallback {
 
         @Override
         public void onStartListen() {
-            Bundle bundle = new Bundle();
-            mReceiver.send(SpeechState.START_LISTEN.ordinal(), bundle);
+            mEvents.onStartListen();
         }
 
         @Override
         public void onMicActivity(double fftsum) {
-            Bundle bundle = new Bundle();
-            bundle.putSerializable(SpeechResultReceiver.PARAM_FFT_SUM, fftsum);
-            mReceiver.send(SpeechState.MIC_ACTIVITY.ordinal(), bundle);
+            mEvents.onMicActivity(fftsum);
         }
 
         @Override
         public void onDecoding() {
-            Bundle bundle = new Bundle();
-            mReceiver.send(SpeechState.DECODING.ordinal(), bundle);
+            mEvents.onDecoding();
         }
 
         @Override
         public void onSTTResult(@Nullable STTResult result) {
             mIsRunning = false;
-            Bundle bundle = new Bundle();
-            bundle.putSerializable(SpeechResultReceiver.PARAM_RESULT, result);
-            mReceiver.send(SpeechState.STT_RESULT.ordinal(), bundle);
+            mEvents.onSTTResult(result);
+        }
+
+        @Override
+        public void onPartialResult(@NonNull STTResult result) {
+            mEvents.onPartialResult(result);
         }
 
         @Override
         public void onNoVoice() {
             mIsRunning = false;
-            Bundle bundle = new Bundle();
-            mReceiver.send(SpeechState.NO_VOICE.ordinal(), bundle);
+            mEvents.onNoVoice();
         }
 
         @Override
         public void onError(@ErrorType int errorType, @Nullable String error) {
             mIsRunning = false;
-            Bundle bundle = new Bundle();
-            bundle.putSerializable(SpeechResultReceiver.PARAM_RESULT, error);
-            mReceiver.send(SpeechState.ERROR.ordinal(), bundle);
+            mEvents.onError(errorType, error);
         }
     };
 }
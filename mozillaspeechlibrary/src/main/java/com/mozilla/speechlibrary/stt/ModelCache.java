@@ -0,0 +1,240 @@
+package com.mozilla.speechlibrary.stt;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mozilla.speechlibrary.utils.ModelUtils;
+import com.mozilla.speechlibrary.utils.RefCountedCache;
+
+import org.json.JSONObject;
+import org.mozilla.deepspeech.libdeepspeech.DeepSpeechModel;
+import org.mozilla.deepspeech.libdeepspeech.DeepSpeechStreamingState;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps DeepSpeech models loaded between sessions, so a session only has to create a stream.
+ * A model is freed once it hasn't been used for the idle timeout, and idle models are freed
+ * when the system is low on memory.
+ */
+public class ModelCache implements ComponentCallbacks2 {
+
+    private static final String TAG = ModelCache.class.getSimpleName();
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+    /** The only rate DeepSpeech models take audio at. */
+    public static final int SAMPLE_RATE = 16000;
+
+    // Audio the warm-up inference is run on, and the size it's fed in like a session
+    private static final int WARM_UP_MS = 1000;
+    private static final int WARM_UP_FEED_SIZE = 1600;
+
+    private static ModelCache sInstance;
+
+    private final RefCountedCache<Parameters, DeepSpeechModel> mModels;
+
+    /**
+     * What a model is loaded with, read from the model folder.
+     */
+    public static class Parameters {
+        @NonNull
+        final String mModelRoot;
+        final int mBeamWidth;
+        final float mLmAlpha;
+        final float mLmBeta;
+        final boolean mUseDecoder;
+
+        Parameters(@NonNull String modelRoot, int beamWidth, float lmAlpha, float lmBeta, boolean useDecoder) {
+            mModelRoot = modelRoot;
+            mBeamWidth = beamWidth;
+            mLmAlpha = lmAlpha;
+            mLmBeta = lmBeta;
+            mUseDecoder = useDecoder;
+        }
+
+        @NonNull
+        public static Parameters read(@NonNull String modelRoot) throws Exception {
+            StringBuilder infoJsonContent = new StringBuilder();
+            try (BufferedReader br = new BufferedReader(new FileReader(ModelUtils.getInfoJsonFolder(modelRoot)))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    infoJsonContent.append(line);
+                }
+            }
+            Log.d(TAG, "infoJsonContent=" + infoJsonContent);
+
+            JSONObject modelParameters = (new JSONObject(infoJsonContent.toString())).getJSONObject("parameters");
+            int beamWidth = modelParameters.getInt("beamWidth");
+            float lmAlpha = (float)modelParameters.getDouble("lmAlpha");
+            float lmBeta = (float)modelParameters.getDouble("lmBeta");
+            boolean useDecoder = !(new File(modelRoot + "/.noUseDecoder")).exists();
+
+            Log.d(TAG, "Read model parameters: beamWidth=" + beamWidth);
+            Log.d(TAG, "Read model parameters: lmAlpha=" + lmAlpha);
+            Log.d(TAG, "Read model parameters: lmBeta=" + lmBeta);
+            Log.d(TAG, "useDecoder=" + useDecoder);
+
+            return new Parameters(modelRoot, beamWidth, lmAlpha, lmBeta, useDecoder);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Parameters)) {
+                return false;
+            }
+            Parameters other = (Parameters) o;
+            return mModelRoot.equals(other.mModelRoot) &&
+                    mBeamWidth == other.mBeamWidth &&
+                    Float.compare(mLmAlpha, other.mLmAlpha) == 0 &&
+                    Float.compare(mLmBeta, other.mLmBeta) == 0 &&
+                    mUseDecoder == other.mUseDecoder;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mModelRoot.hashCode();
+            hash = 31 * hash + mBeamWidth;
+            hash = 31 * hash + Float.floatToIntBits(mLmAlpha);
+            hash = 31 * hash + Float.floatToIntBits(mLmBeta);
+            hash = 31 * hash + (mUseDecoder ? 1 : 0);
+            return hash;
+        }
+    }
+
+    /**
+     * The cache of the process, it listens to the memory callbacks of the application.
+     */
+    @NonNull
+    public static synchronized ModelCache getInstance(@Nullable Context context) {
+        if (sInstance == null) {
+            sInstance = new ModelCache(DEFAULT_IDLE_TIMEOUT_MS);
+            Context application = context != null ? context.getApplicationContext() : null;
+            if (application == null) {
+                application = context;
+            }
+            if (application != null) {
+                application.registerComponentCallbacks(sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    private ModelCache(long idleTimeoutMs) {
+        mModels = new RefCountedCache<>(ModelCache::load, DeepSpeechModel::freeModel, idleTimeoutMs);
+    }
+
+    private static DeepSpeechModel load(@NonNull Parameters parameters) {
+        String modelRoot = parameters.mModelRoot;
+        Log.d(TAG, "new DeepSpeechModel(\"" + ModelUtils.getTFLiteFolder(modelRoot) + "\")");
+        DeepSpeechModel model = new DeepSpeechModel(ModelUtils.getTFLiteFolder(modelRoot), parameters.mBeamWidth);
+        if (parameters.mUseDecoder) {
+            model.enableDecoderWihLM(ModelUtils.getLMFolder(modelRoot), ModelUtils.getTRIEFolder(modelRoot),
+                    parameters.mLmAlpha, parameters.mLmBeta);
+        }
+        return model;
+    }
+
+    /**
+     * Returns the model in {@code modelRoot}, loading it on the calling thread if it isn't
+     * cached. Close the lease when the session is done with it. Sessions sharing a model must
+     * not use it at the same time, so they synchronize on it.
+     */
+    @NonNull
+    public RefCountedCache<Parameters, DeepSpeechModel>.Lease acquire(@NonNull String modelRoot) throws Exception {
+        if (!ModelUtils.isReady(modelRoot)) {
+            throw new IOException("Model not ready");
+        }
+        return mModels.acquire(Parameters.read(modelRoot));
+    }
+
+    /**
+     * Loads the model in {@code modelRoot} on the calling thread unless it's cached, and runs an
+     * inference on silence so the first session doesn't pay for setting up the interpreter and
+     * for faulting in the language model. The model then stays loaded for the idle timeout.
+     */
+    @NonNull
+    public ModelPreload preload(@NonNull String modelRoot) throws Exception {
+        long start = System.nanoTime();
+        if (!ModelUtils.isReady(modelRoot)) {
+            throw new IOException("Model not ready");
+        }
+        Parameters parameters = Parameters.read(modelRoot);
+        boolean cached = mModels.contains(parameters);
+
+        try (RefCountedCache<Parameters, DeepSpeechModel>.Lease lease = mModels.acquire(parameters)) {
+            long loaded = System.nanoTime();
+
+            DeepSpeechModel model = lease.get();
+            short[] silence = new short[WARM_UP_FEED_SIZE];
+            int samples = SAMPLE_RATE * WARM_UP_MS / 1000;
+            // Locked per call like a session, so a session running meanwhile isn't held up
+            DeepSpeechStreamingState stream;
+            synchronized (model) {
+                stream = model.createStream();
+            }
+            for (int fed = 0; fed < samples; fed += silence.length) {
+                synchronized (model) {
+                    model.feedAudioContent(stream, silence, Math.min(silence.length, samples - fed));
+                }
+            }
+            synchronized (model) {
+                model.finishStream(stream);
+            }
+            long warmedUp = System.nanoTime();
+
+            ModelPreload preload = new ModelPreload(modelRoot, cached,
+                    TimeUnit.NANOSECONDS.toMillis(loaded - start),
+                    TimeUnit.NANOSECONDS.toMillis(warmedUp - loaded));
+            Log.d(TAG, "Preloaded " + preload);
+            return preload;
+        }
+    }
+
+    /**
+     * @param idleTimeoutMs how long an unused model stays loaded, 0 to free it with its last
+     *                      session.
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        mModels.setIdleTimeoutMs(idleTimeoutMs);
+    }
+
+    /**
+     * Frees the models no session is using.
+     */
+    public void trim() {
+        int freed = mModels.trim();
+        Log.d(TAG, "Freed " + freed + " models");
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Still in the foreground and only a little short, or just hidden: likely needed again soon
+        if (level >= TRIM_MEMORY_BACKGROUND ||
+                level == TRIM_MEMORY_RUNNING_LOW ||
+                level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
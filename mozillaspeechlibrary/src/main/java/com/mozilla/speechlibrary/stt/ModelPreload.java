@@ -0,0 +1,51 @@
+package com.mozilla.speechlibrary.stt;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Timings of {@link ModelCache#preload(String)}.
+ */
+public class ModelPreload {
+
+    private final String mModelPath;
+    private final boolean mCached;
+    private final long mLoadMs;
+    private final long mWarmUpMs;
+
+    ModelPreload(@NonNull String modelPath, boolean cached, long loadMs, long warmUpMs) {
+        mModelPath = modelPath;
+        mCached = cached;
+        mLoadMs = loadMs;
+        mWarmUpMs = warmUpMs;
+    }
+
+    @NonNull
+    public String getModelPath() {
+        return mModelPath;
+    }
+
+    /**
+     * Whether the model was already loaded, {@link #getLoadMs()} is then only the lookup.
+     */
+    public boolean wasCached() {
+        return mCached;
+    }
+
+    public long getLoadMs() {
+        return mLoadMs;
+    }
+
+    /**
+     * Time of the synthetic inference, i.e. a stream fed with silence and finished.
+     */
+    public long getWarmUpMs() {
+        return mWarmUpMs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mModelPath + (mCached ? " cached" : " loaded") +
+                " in " + mLoadMs + " ms, warm-up " + mWarmUpMs + " ms";
+    }
+}
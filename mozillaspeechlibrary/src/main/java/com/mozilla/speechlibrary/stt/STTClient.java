@@ -2,8 +2,18 @@ package com.mozilla.speechlibrary.stt;
 
 public interface STTClient {
     default void initEncoding(int sampleRate) {};
+
+    /**
+     * The buffer is owned by the caller and reused for the next frame as soon as this call
+     * returns. Implementations that need the samples later must copy them.
+     */
     default void encode(final short[] buffer, final int pos, final int len) {};
     default void endEncoding() {};
     default void process(){}
+
+    /**
+     * Called instead of {@link #process()} when the session ends without anything to decode.
+     */
+    default void cancel() {}
     default boolean isRunning() { return false; }
 }
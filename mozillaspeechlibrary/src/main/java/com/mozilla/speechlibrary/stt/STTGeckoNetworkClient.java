@@ -28,6 +28,8 @@ public class STTGeckoNetworkClient extends STTNetworkClient {
 
         mHandler = new Handler(Looper.getMainLooper());
         mExecutor = executor;
+        // WebRequest takes the whole body up front
+        mStreaming = false;
     }
 
     @Override
@@ -37,7 +39,7 @@ public class STTGeckoNetworkClient extends STTNetworkClient {
         byte[] byteArray = mBaos.toByteArray();
         ByteBuffer input = ByteBuffer.allocateDirect(byteArray.length);
         input.put(byteArray);
-        WebRequest request = new WebRequest.Builder(STT_ENDPOINT)
+        WebRequest request = new WebRequest.Builder(mEndpoint)
                 .body(input)
                 .method("POST")
                 .addHeader("Accept-Language-STT", mSettings.getLanguage())
@@ -6,94 +6,70 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.mozilla.speechlibrary.audio.ShortRingBuffer;
 import com.mozilla.speechlibrary.utils.ModelUtils;
+import com.mozilla.speechlibrary.utils.RefCountedCache;
 
-import org.json.JSONObject;
 import org.mozilla.deepspeech.libdeepspeech.DeepSpeechModel;
 import org.mozilla.deepspeech.libdeepspeech.DeepSpeechStreamingState;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class STTLocalClient extends STTBaseClient implements Runnable {
 
     private static final String TAG = STTLocalClient.class.getSimpleName();
 
+    // About 4 s of 16 kHz audio between capture and the decoder
+    private static final int BUFFER_CAPACITY = 65536;
+    private static final int FEED_SIZE = 1600;
+
     private boolean mKeepClips = false;
-    private DeepSpeechModel mModel;
+    private RefCountedCache<ModelCache.Parameters, DeepSpeechModel>.Lease mModel;
     private DeepSpeechStreamingState mStreamingState;
     private FileChannel clipDebug;
-    private Queue<short[]> mBuffers;
-    private boolean mEndOfStream;
+    private ShortRingBuffer mBuffers;
+    private volatile boolean mDecode;
+    private int mPartialInterval;
+    private String mPartial;
 
     public STTLocalClient(@NonNull Context context,
                    @NonNull SpeechServiceSettings settings,
                    @NonNull STTClientCallback callback) {
         super(context, settings, callback);
 
+        mBuffers = new ShortRingBuffer(BUFFER_CAPACITY, settings.getAudioOverflowPolicy());
+        mPartialInterval = settings.getSampleRate() * settings.getPartialResultIntervalMs() / 1000;
+
         String modelRoot = settings.getModelPath();
         if (!ModelUtils.isReady(modelRoot)) {
             mIsRunning = false;
-            mEndOfStream = true;
+            mBuffers.close();
             mCallback.onSTTError("STT Error: Model not ready");
             return;
         }
 
-        int beamWidth;
-        float lmAlpha;
-        float lmBeta;
         try {
-            StringBuilder infoJsonContent = new StringBuilder();
-            BufferedReader br = new BufferedReader(new FileReader(ModelUtils.getInfoJsonFolder(modelRoot)));
-            String line;
-            while ((line = br.readLine()) != null) {
-                Log.d(TAG, "line=" + line);
-                infoJsonContent.append(line);
-            }
-            br.close();
-            Log.d(TAG, "infoJsonContent=" + infoJsonContent);
-
-            JSONObject modelParameters = (new JSONObject(infoJsonContent.toString())).getJSONObject("parameters");
-            beamWidth = modelParameters.getInt("beamWidth");
-            lmAlpha = (float)modelParameters.getDouble("lmAlpha");
-            lmBeta = (float)modelParameters.getDouble("lmBeta");
+            mModel = ModelCache.getInstance(context).acquire(modelRoot);
 
         } catch (Exception e) {
+            Log.e(TAG, "Model load failed", e);
             mIsRunning = false;
-            mEndOfStream = true;
+            mBuffers.close();
             mCallback.onSTTError("STT Error");
             return;
         }
 
-        Log.d(TAG, "Read model parameters: beamWidth=" + beamWidth);
-        Log.d(TAG, "Read model parameters: lmAlpha=" + lmAlpha);
-        Log.d(TAG, "Read model parameters: lmBeta=" + lmBeta);
-
         int clipNumber = 0;
         clipNumber += 1;
 
         mKeepClips = (new File(modelRoot + "/.keepClips")).exists();
-        boolean useDecoder = !(new File(modelRoot + "/.noUseDecoder")).exists();
 
         Log.d(TAG, "keepClips=" + mKeepClips);
-        Log.d(TAG, "useDecoder=" + useDecoder);
-
-        if (mModel == null) {
-            Log.d(TAG, "new DeepSpeechModel(\"" + ModelUtils.getTFLiteFolder(modelRoot) + "\")");
-            mModel = new DeepSpeechModel(ModelUtils.getTFLiteFolder(modelRoot), beamWidth);
-        }
-
-        if (useDecoder) {
-            mModel.enableDecoderWihLM(ModelUtils.getLMFolder(modelRoot), ModelUtils.getTRIEFolder(modelRoot), lmAlpha, lmBeta);
-        }
 
         if (mKeepClips) {
             try {
@@ -102,24 +78,40 @@ public class STTLocalClient extends STTBaseClient implements Runnable {
             } catch (Exception ignored) { }
         }
 
-        mStreamingState = mModel.createStream();
+        DeepSpeechModel model = mModel.get();
+        synchronized (model) {
+            mStreamingState = model.createStream();
+        }
         mIsRunning = true;
-        mEndOfStream = false;
     }
 
     @Override
     public void encode(final short[] aBuffer, final int pos, final int len) {
-        mBuffers.add(aBuffer);
+        mBuffers.write(aBuffer, pos, len);
     }
 
     @Override
     public void process() {
-        mEndOfStream = true;
+        mDecode = true;
+        mBuffers.close();
+    }
+
+    @Override
+    public void cancel() {
+        mBuffers.close();
     }
 
+    // Gives the model back to the cache, which keeps it loaded for the next session. The Java
+    // API has no way to drop a stream, an unfinished one is finished and its text ignored.
     private void closeModel() {
         if (mModel != null) {
-            mModel.freeModel();
+            if (mStreamingState != null) {
+                DeepSpeechModel model = mModel.get();
+                synchronized (model) {
+                    model.finishStream(mStreamingState);
+                }
+            }
+            mModel.close();
         }
 
         mStreamingState = null;
@@ -129,7 +121,13 @@ public class STTLocalClient extends STTBaseClient implements Runnable {
     private void decode() {
         mCallback.onSTTStart();
 
-        String finalDecoded = mModel.finishStream(mStreamingState);
+        String finalDecoded;
+        DeepSpeechModel model = mModel.get();
+        synchronized (model) {
+            finalDecoded = model.finishStream(mStreamingState);
+        }
+        // finishStream frees the stream
+        mStreamingState = null;
 
         STTResult sttResult = new STTResult(finalDecoded, (float)(1.0));
         mCallback.onSTTFinished(sttResult);
@@ -139,26 +137,51 @@ public class STTLocalClient extends STTBaseClient implements Runnable {
         mIsRunning = false;
     }
 
+    // A partial result is only worth its decode while the user is still speaking and the feed
+    // isn't behind capture, otherwise it's put off so the decoder can catch up
+    private boolean isCaughtUp() {
+        return !mDecode && mBuffers.size() < mPartialInterval;
+    }
+
+    private void partialDecode(DeepSpeechModel model) {
+        String partial;
+        synchronized (model) {
+            partial = model.intermediateDecode(mStreamingState);
+        }
+        if (partial != null && !partial.equals(mPartial)) {
+            mPartial = partial;
+            mCallback.onSTTPartial(new STTResult(partial, (float)(1.0)));
+        }
+    }
+
     @Override
     public void run() {
-        mBuffers = new ConcurrentLinkedQueue<>();
-
-        while (!mEndOfStream || mBuffers.size() > 0) {
-            short[] aBuffer = mBuffers.poll();
+        if (mModel == null) {
+            return;
+        }
 
-            if (aBuffer == null) {
-                continue;
+        DeepSpeechModel model = mModel.get();
+        short[] aBuffer = new short[FEED_SIZE];
+        int read;
+        int sincePartial = 0;
+        while ((read = mBuffers.read(aBuffer, 0, aBuffer.length)) > 0) {
+            synchronized (model) {
+                model.feedAudioContent(mStreamingState, aBuffer, read);
             }
 
-            this.mModel.feedAudioContent(mStreamingState, aBuffer, aBuffer.length);
+            sincePartial += read;
+            if (mPartialInterval > 0 && sincePartial >= mPartialInterval && isCaughtUp()) {
+                sincePartial = 0;
+                partialDecode(model);
+            }
 
             // DEBUG
             if (mKeepClips) {
-                ByteBuffer myByteBuffer = ByteBuffer.allocate(aBuffer.length * 2);
+                ByteBuffer myByteBuffer = ByteBuffer.allocate(read * 2);
                 myByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
 
                 ShortBuffer myShortBuffer = myByteBuffer.asShortBuffer();
-                myShortBuffer.put(aBuffer);
+                myShortBuffer.put(aBuffer, 0, read);
 
                 try {
                     clipDebug.write(myByteBuffer);
@@ -167,6 +190,12 @@ public class STTLocalClient extends STTBaseClient implements Runnable {
             }
         }
 
-        decode();
+        if (mDecode) {
+            decode();
+
+        } else {
+            closeModel();
+            mIsRunning = false;
+        }
     }
 }
@@ -3,6 +3,7 @@ package com.mozilla.speechlibrary.stt;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.axet.audiolibrary.encoders.Encoder;
 import com.github.axet.audiolibrary.encoders.EncoderInfo;
@@ -15,17 +16,55 @@ import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Sends the utterance as Ogg Opus to the speech proxy. By default the audio is buffered and
+ * posted once the session ends. With {@link SpeechServiceSettings#useStreamingUpload()} the
+ * connection is opened by {@link #initEncoding(int)} and every Ogg page is sent with chunked
+ * transfer encoding as soon as the encoder produces it, from an upload thread so the capture
+ * loop never waits on the network. Only the last page and the response are left after the end
+ * of speech then. An upload that falls {@link #MAX_PENDING_BYTES} behind, or doesn't finish
+ * within {@link #TIMEOUT_MS} after the end of speech, fails the session.
+ */
 public class STTNetworkClient extends STTBaseClient {
 
     static final String STT_ENDPOINT = "https://speaktome-2.services.mozilla.com/";
 
+    // Marks the end of the pages for the upload thread
+    private static final byte[] END_OF_AUDIO = new byte[0];
+
+    // Connect and read timeout of the request, and how long process() waits for a streaming
+    // upload to finish
+    static final int TIMEOUT_MS = 15000;
+    // Ogg waiting for the upload thread, about 3 minutes of speech at 24 kbps. A backlog that
+    // big means the network can't keep up, and the upload is abandoned instead of buffering
+    // for as long as the user speaks.
+    static final int MAX_PENDING_BYTES = 512 * 1024;
+
+    String mEndpoint = STT_ENDPOINT;
+    boolean mStreaming;
+    int mTimeoutMs = TIMEOUT_MS;
+    int mMaxPendingBytes = MAX_PENDING_BYTES;
     private Encoder mEncoder;
     ByteArrayOutputStream mBaos;
+    private BlockingQueue<byte[]> mPages;
+    private FutureTask<String> mUpload;
+    private final AtomicInteger mPendingBytes = new AtomicInteger();
+    private volatile boolean mUploadBehind;
+    private volatile HttpURLConnection mConnection;
 
     public STTNetworkClient(@NonNull Context context,
                      @NonNull SpeechServiceSettings settings,
@@ -33,6 +72,7 @@ public class STTNetworkClient extends STTBaseClient {
         super(context, settings, callback);
 
         mBaos = new ByteArrayOutputStream();
+        mStreaming = settings.useStreamingUpload();
         mIsRunning = true;
     }
 
@@ -41,29 +81,34 @@ public class STTNetworkClient extends STTBaseClient {
         try {
             mCallback.onSTTStart();
 
-            URL obj = new URL(STT_ENDPOINT);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-            con.setRequestMethod("POST");
-            con.setRequestProperty("Accept-Language-STT", mSettings.getLanguage());
-            con.setRequestProperty("Store-Transcription", mSettings.useStoreTranscriptions() ? "1": "0" );
-            con.setRequestProperty("Store-Sample", mSettings.useStoreSamples() ? "1": "0");
-            con.setRequestProperty("Product-Tag", mSettings.getProductTag());
+            String body;
+            if (mUpload != null) {
+                try {
+                    body = mUpload.get(mTimeoutMs, TimeUnit.MILLISECONDS);
 
-            OutputStream os = con.getOutputStream();
-            os.write(mBaos.toByteArray());
-            os.close();
+                } catch (CancellationException e) {
+                    if (mUploadBehind) {
+                        throw new IOException("Upload fell behind");
+                    }
+                    throw e;
+                }
+
+            } else {
+                HttpURLConnection con = openConnection();
+                mConnection = con;
+                try {
+                    OutputStream os = con.getOutputStream();
+                    os.write(mBaos.toByteArray());
+                    os.close();
+                    body = readResponse(con);
 
-            int responseCode = con.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader in = new BufferedReader(new InputStreamReader( con.getInputStream()));
-                String inputLine;
-                StringBuilder response = new StringBuilder();
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
+                } finally {
+                    mConnection = null;
                 }
-                in.close();
+            }
 
-                parseBody(new String(response));
+            if (body != null) {
+                parseBody(body);
 
             } else {
                 mIsRunning = false;
@@ -71,28 +116,153 @@ public class STTNetworkClient extends STTBaseClient {
                 mCallback.onSTTError("STT Error");
             }
 
+        } catch (TimeoutException e) {
+            cancel();
+            mIsRunning = false;
+
+            mCallback.onSTTError("STT Error: Upload timed out");
+
         } catch(Exception e) {
+            Throwable error = e instanceof ExecutionException ? e.getCause() : e;
             mIsRunning = false;
 
-            e.printStackTrace();
-            mCallback.onSTTError("STT Error: " + e.getMessage());
+            error.printStackTrace();
+            mCallback.onSTTError("STT Error: " + error.getMessage());
         }
     }
 
+    // Interrupting the upload doesn't unblock a write to a stalled connection, closing it does
     @Override
-    public void initEncoding(int sampleRate) {
+    public void cancel() {
+        if (mUpload != null) {
+            mUpload.cancel(true);
+        }
+        HttpURLConnection con = mConnection;
+        if (con != null) {
+            con.disconnect();
+        }
+    }
+
+    @NonNull
+    HttpURLConnection openConnection() throws IOException {
+        URL obj = new URL(mEndpoint);
+        HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+        con.setDoOutput(true);
+        con.setConnectTimeout(mTimeoutMs);
+        con.setReadTimeout(mTimeoutMs);
+        con.setRequestMethod("POST");
+        con.setRequestProperty("Accept-Language-STT", mSettings.getLanguage());
+        con.setRequestProperty("Store-Transcription", mSettings.useStoreTranscriptions() ? "1": "0" );
+        con.setRequestProperty("Store-Sample", mSettings.useStoreSamples() ? "1": "0");
+        con.setRequestProperty("Product-Tag", mSettings.getProductTag());
+        return con;
+    }
+
+    /**
+     * @return the response body, or null if the request failed.
+     */
+    @Nullable
+    String readResponse(@NonNull HttpURLConnection con) throws IOException {
+        int responseCode = con.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader( con.getInputStream()));
+        String inputLine;
+        StringBuilder response = new StringBuilder();
+        while ((inputLine = in.readLine()) != null) {
+            response.append(inputLine);
+        }
+        in.close();
+        return new String(response);
+    }
+
+    // Runs on the upload thread, connects while the user is speaking and sends the pages as
+    // they come, batching whatever queued up while the previous write was in flight.
+    private String upload() throws IOException, InterruptedException {
+        HttpURLConnection con = openConnection();
+        mConnection = con;
+        try {
+            // Cancelled before cancel() could see the connection
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            con.setChunkedStreamingMode(0);
+            OutputStream os = con.getOutputStream();
+            byte[] page = mPages.take();
+            while (page != END_OF_AUDIO) {
+                mPendingBytes.addAndGet(-page.length);
+                os.write(page);
+                if (mPages.isEmpty()) {
+                    os.flush();
+                }
+                page = mPages.take();
+            }
+            os.close();
+            return readResponse(con);
+
+        } finally {
+            mConnection = null;
+            con.disconnect();
+        }
+    }
+
+    Encoder createEncoder(int sampleRate) {
         EncoderInfo ef = new EncoderInfo(1, sampleRate, 16);
-        mEncoder = Factory.getEncoder(mContext, FormatOPUS.EXT, ef, mBaos);
+        return Factory.getEncoder(mContext, FormatOPUS.EXT, ef, mBaos);
+    }
+
+    @Override
+    public void initEncoding(int sampleRate) {
+        mEncoder = createEncoder(sampleRate);
+
+        if (mStreaming) {
+            mPages = new LinkedBlockingQueue<>();
+            mPendingBytes.set(0);
+            mUploadBehind = false;
+            mUpload = new FutureTask<>(this::upload);
+            new Thread(mUpload, "STT Upload").start();
+        }
     }
 
     @Override
     public void encode(final short[] buffer, final int pos, final int len) {
         mEncoder.encode(buffer, pos, len);
+        sendPages();
     }
 
     @Override
     public void endEncoding() {
+        if (mEncoder == null) {
+            return;
+        }
         mEncoder.close();
+        mEncoder = null;
+        sendPages();
+        if (mPages != null) {
+            mPages.add(END_OF_AUDIO);
+        }
+    }
+
+    // Hands the pages the encoder wrote since the last call to the upload thread, or gives up
+    // on the upload when too many are still waiting for it. Nothing is queued once the upload
+    // ended, process() reports why it did.
+    private void sendPages() {
+        if (mPages == null || mBaos.size() == 0) {
+            return;
+        }
+
+        if (!mUpload.isDone()) {
+            if (mPendingBytes.addAndGet(mBaos.size()) > mMaxPendingBytes) {
+                mUploadBehind = true;
+                cancel();
+
+            } else {
+                mPages.add(mBaos.toByteArray());
+            }
+        }
+        mBaos.reset();
     }
 
     void parseBody(@NonNull String body) {
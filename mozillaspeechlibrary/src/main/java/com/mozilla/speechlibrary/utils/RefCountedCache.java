@@ -0,0 +1,251 @@
+package com.mozilla.speechlibrary.utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares expensive values by key. {@link #acquire} loads a value on first use and hands out a
+ * {@link Lease} for it, the value is released once it has had no leases for the idle timeout,
+ * or when {@link #trim()} is called. A key is loaded at most once at a time, other keys can be
+ * acquired meanwhile.
+ */
+public class RefCountedCache<K, V> {
+
+    public interface Loader<K, V> {
+        @NonNull
+        V load(@NonNull K key) throws Exception;
+    }
+
+    public interface Releaser<V> {
+        void release(@NonNull V value);
+    }
+
+    /** Idle timeout that keeps values until {@link #trim()}. */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private final Loader<K, V> mLoader;
+    private final Releaser<V> mReleaser;
+    private final Map<K, Entry> mEntries = new HashMap<>();
+    private long mIdleTimeoutMs;
+    private ScheduledThreadPoolExecutor mEvictions;
+    private long mLoads;
+
+    private class Entry {
+        final K mKey;
+        V mValue;
+        int mRefs;
+        // Counts releases, an eviction only applies if no lease came and went since
+        long mIdleGeneration;
+        boolean mReleaseWhenIdle;
+
+        Entry(K key) {
+            mKey = key;
+        }
+    }
+
+    /**
+     * A reference to a value, to be closed when done with it.
+     */
+    public class Lease implements Closeable {
+        private final Entry mEntry;
+        private final V mValue;
+        private boolean mClosed;
+
+        private Lease(Entry entry, V value) {
+            mEntry = entry;
+            mValue = value;
+        }
+
+        @NonNull
+        public V get() {
+            return mValue;
+        }
+
+        @Override
+        public void close() {
+            synchronized (RefCountedCache.this) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+            }
+            release(mEntry);
+        }
+    }
+
+    /**
+     * @param idleTimeoutMs how long a value is kept without leases, 0 to release it with its
+     *                      last lease or {@link #NEVER}.
+     */
+    public RefCountedCache(@NonNull Loader<K, V> loader,
+                           @NonNull Releaser<V> releaser,
+                           long idleTimeoutMs) {
+        mLoader = loader;
+        mReleaser = releaser;
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Applies to values that become idle from now on.
+     */
+    public synchronized void setIdleTimeoutMs(long idleTimeoutMs) {
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    public synchronized long getIdleTimeoutMs() {
+        return mIdleTimeoutMs;
+    }
+
+    /**
+     * Returns a lease on the value for {@code key}, loading it on the calling thread if it isn't
+     * cached. Waits if another thread is loading it.
+     *
+     * @throws Exception what the loader threw, the next call tries again.
+     */
+    @NonNull
+    public Lease acquire(@NonNull K key) throws Exception {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                mEntries.put(key, entry);
+            }
+            entry.mRefs++;
+        }
+
+        V value;
+        synchronized (entry) {
+            try {
+                if (entry.mValue == null) {
+                    V loaded = mLoader.load(key);
+                    synchronized (this) {
+                        entry.mValue = loaded;
+                        mLoads++;
+                    }
+                }
+                value = entry.mValue;
+
+            } catch (Exception e) {
+                synchronized (this) {
+                    entry.mRefs--;
+                    if (entry.mRefs == 0 && mEntries.get(key) == entry) {
+                        mEntries.remove(key);
+                    }
+                }
+                throw e;
+            }
+        }
+        return new Lease(entry, value);
+    }
+
+    private void release(Entry entry) {
+        V released = null;
+        synchronized (this) {
+            entry.mRefs--;
+            if (entry.mRefs > 0) {
+                return;
+            }
+
+            entry.mIdleGeneration++;
+            if (entry.mReleaseWhenIdle || mIdleTimeoutMs <= 0) {
+                released = remove(entry);
+
+            } else if (mIdleTimeoutMs != NEVER) {
+                long generation = entry.mIdleGeneration;
+                evictions().schedule(() -> evict(entry, generation), mIdleTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (released != null) {
+            mReleaser.release(released);
+        }
+    }
+
+    private void evict(Entry entry, long generation) {
+        V released;
+        synchronized (this) {
+            if (entry.mRefs > 0 || entry.mIdleGeneration != generation) {
+                return;
+            }
+            released = remove(entry);
+        }
+
+        if (released != null) {
+            mReleaser.release(released);
+        }
+    }
+
+    // Called with the lock held
+    private V remove(Entry entry) {
+        if (mEntries.get(entry.mKey) == entry) {
+            mEntries.remove(entry.mKey);
+        }
+        V value = entry.mValue;
+        entry.mValue = null;
+        return value;
+    }
+
+    private ScheduledThreadPoolExecutor evictions() {
+        if (mEvictions == null) {
+            mEvictions = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "RefCountedCache eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            mEvictions.setRemoveOnCancelPolicy(true);
+        }
+        return mEvictions;
+    }
+
+    /**
+     * Releases every value without leases now, and the others as soon as their last lease is
+     * closed.
+     *
+     * @return the number of values released now.
+     */
+    public int trim() {
+        List<V> released = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : new ArrayList<>(mEntries.values())) {
+                if (entry.mRefs > 0) {
+                    entry.mReleaseWhenIdle = true;
+
+                } else {
+                    V value = remove(entry);
+                    if (value != null) {
+                        released.add(value);
+                    }
+                }
+            }
+        }
+
+        for (V value : released) {
+            mReleaser.release(value);
+        }
+        return released.size();
+    }
+
+    public synchronized boolean contains(@NonNull K key) {
+        Entry entry = mEntries.get(key);
+        return entry != null && entry.mValue != null;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Number of times a value was loaded since the cache was created.
+     */
+    public synchronized long getLoads() {
+        return mLoads;
+    }
+}
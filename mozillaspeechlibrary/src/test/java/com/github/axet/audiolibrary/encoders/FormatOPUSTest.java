@@ -0,0 +1,109 @@
+package com.github.axet.audiolibrary.encoders;
+
+import com.github.axet.opusjni.Config;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class FormatOPUSTest {
+
+    /**
+     * Hands frames to a CRC instead of the codec, so no native code is needed.
+     */
+    static class Frames extends FormatOPUS {
+        static final byte[] PACKET = new byte[40];
+
+        CRC32 crc = new CRC32();
+        int frames;
+        long duration;
+
+        Frames(int hz, int channels) {
+            super(null, new EncoderInfo(channels, hz, 16), null);
+        }
+
+        @Override
+        public void create(EncoderInfo info, ByteArrayOutputStream out) {
+            init(info);
+        }
+
+        @Override
+        byte[] encodeOpus(short[] buf, int pos, int len) {
+            assertEquals(frameSize * info.channels, len);
+            for (int i = pos; i < pos + len; i++) {
+                crc.update(buf[i]);
+                crc.update(buf[i] >> 8);
+            }
+            frames++;
+            return PACKET;
+        }
+
+        @Override
+        void encode(byte[] packet, long dur) {
+            duration += dur;
+        }
+    }
+
+    static {
+        Config.natives = false; // nothing to load for Frames
+    }
+
+    private static short[] pcm(int len) {
+        short[] pcm = new short[len];
+        for (int i = 0; i < len; i++) {
+            pcm[i] = (short) (i * 7919);
+        }
+        return pcm;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void frames_doNotDependOnChunks() {
+        short[] pcm = pcm(16000 * 3);
+        Frames whole = new Frames(16000, 1);
+        whole.encode(pcm, 0, pcm.length);
+
+        for (int chunk : new int[]{1, 77, 320, 960, 1000, 4000}) {
+            Frames pieces = new Frames(16000, 1);
+            for (int pos = 0; pos < pcm.length; pos += chunk) {
+                pieces.encode(pcm, pos, Math.min(chunk, pcm.length - pos));
+            }
+            assertEquals("chunk " + chunk, whole.frames, pieces.frames);
+            assertEquals("chunk " + chunk, whole.crc.getValue(), pieces.crc.getValue());
+            assertEquals(pcm.length / 960 * 960, pieces.NumSamples);
+        }
+        assertEquals(pcm.length / 960, whole.frames);
+        assertEquals(pcm.length / 960 * 960, whole.duration);
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        // One read of the capture loop, 20 ms, not a multiple of the Opus frame
+        short[] read = pcm(320);
+        for (int channels = 1; channels <= 2; channels++) {
+            for (int hz : new int[]{16000, 44100}) {
+                Frames opus = new Frames(hz, channels);
+                for (int i = 0; i < 100; i++) {
+                    opus.encode(read, 0, read.length / channels * channels);
+                }
+
+                long before = allocatedBytes();
+                for (int i = 0; i < 1000; i++) {
+                    opus.encode(read, 0, read.length / channels * channels);
+                }
+                long allocated = allocatedBytes() - before;
+
+                assertTrue(hz + " Hz " + channels + " channels: " + allocated + " bytes", allocated < 1024);
+                assertTrue(opus.frames > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.axet.audiolibrary.encoders;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StreamResamplerTest {
+
+    private static short[] sine(int sampleRate, int channels, double hz, int frames) {
+        short[] pcm = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                // Second channel at half the amplitude and inverted, to check they stay apart
+                double amplitude = c == 0 ? 10000 : -5000;
+                pcm[i * channels + c] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / sampleRate));
+            }
+        }
+        return pcm;
+    }
+
+    private static short[] run(StreamResampler resampler, short[] pcm, int block) {
+        short[] out = new short[resampler.getOutputSize(pcm.length) + resampler.getFlushSize()];
+        int n = 0;
+        for (int pos = 0; pos < pcm.length; pos += block) {
+            int len = Math.min(block, pcm.length - pos);
+            int produced = resampler.process(pcm, pos, len, out, n);
+            assertTrue(produced <= resampler.getOutputSize(len));
+            n += produced;
+        }
+        n += resampler.flush(out, n);
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Error of the output against the ideal sine, in dB below the signal, skipping the edges.
+     */
+    private static double errorDb(short[] out, int sampleRate, int channels, int channel,
+                                  double amplitude, double hz, double delay) {
+        double signal = 0;
+        double error = 0;
+        int frames = out.length / channels;
+        for (int i = (int) delay + 100; i < frames - 100; i++) {
+            double expected = amplitude * Math.sin(2 * Math.PI * hz * (i - delay) / sampleRate);
+            double d = out[i * channels + channel] - expected;
+            signal += expected * expected;
+            error += d * d;
+        }
+        return 10 * Math.log10(error / signal);
+    }
+
+    @Test
+    public void downsample_keepsSine() {
+        for (StreamResampler.Quality quality : StreamResampler.Quality.values()) {
+            StreamResampler resampler = new StreamResampler(32000, 1, 24000, quality);
+            short[] out = run(resampler, sine(32000, 1, 1000, 32000), 640);
+
+            assertEquals(quality.name(), 24000, out.length, resampler.taps);
+            assertTrue(quality.name(), errorDb(out, 24000, 1, 0, 10000, 1000, resampler.getDelay()) < -30);
+        }
+    }
+
+    @Test
+    public void upsample_keepsChannelsApart() {
+        StreamResampler resampler = new StreamResampler(44100, 2, 48000, StreamResampler.Quality.BEST);
+        short[] out = run(resampler, sine(44100, 2, 440, 44100), 882);
+
+        assertEquals(48000 * 2, out.length, 2 * 32);
+        double delay = resampler.getDelay();
+        assertTrue(errorDb(out, 48000, 2, 0, 10000, 440, delay) < -40);
+        assertTrue(errorDb(out, 48000, 2, 1, -5000, 440, delay) < -40);
+    }
+
+    @Test
+    public void aboveNewNyquist_isFiltered() {
+        StreamResampler resampler = new StreamResampler(48000, 1, 16000, StreamResampler.Quality.MEDIUM);
+        short[] out = run(resampler, sine(48000, 1, 11000, 48000), 960);
+
+        double energy = 0;
+        for (short s : out) {
+            energy += (double) s * s;
+        }
+        // 11 kHz would alias to 5 kHz, it should be at least 40 dB down
+        assertTrue(10 * Math.log10(energy / out.length / (10000.0 * 10000 / 2)) < -40);
+    }
+
+    @Test
+    public void blockSize_doesNotChangeOutput() {
+        short[] pcm = sine(32000, 1, 300, 8000);
+        short[] whole = run(new StreamResampler(32000, 1, 24000, StreamResampler.Quality.FAST), pcm, pcm.length);
+        short[] pieces = run(new StreamResampler(32000, 1, 24000, StreamResampler.Quality.FAST), pcm, 77);
+
+        assertArrayEquals(whole, pieces);
+    }
+}
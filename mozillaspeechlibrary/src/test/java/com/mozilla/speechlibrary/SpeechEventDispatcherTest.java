@@ -0,0 +1,94 @@
+package com.mozilla.speechlibrary;
+
+import androidx.annotation.Nullable;
+
+import com.mozilla.speechlibrary.stt.STTResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpeechEventDispatcherTest {
+
+    private static class RecordingCallback implements SpeechResultCallback {
+
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onStartListen() {
+            mEvents.add("start");
+        }
+
+        @Override
+        public void onMicActivity(double fftsum) {
+            mEvents.add("mic " + fftsum);
+        }
+
+        @Override
+        public void onDecoding() {
+            mEvents.add("decoding");
+        }
+
+        @Override
+        public void onSTTResult(@Nullable STTResult result) {
+            mEvents.add("result");
+        }
+
+        @Override
+        public void onNoVoice() {
+            mEvents.add("novoice");
+        }
+
+        @Override
+        public void onError(@ErrorType int errorType, @Nullable String error) {
+            mEvents.add("error " + errorType + " " + error);
+        }
+    }
+
+    @Test
+    public void deliversTypedEventsInOrderOnExecutor() {
+        List<Runnable> queue = new ArrayList<>();
+        SpeechEventDispatcher dispatcher = new SpeechEventDispatcher(queue::add);
+        RecordingCallback callback = new RecordingCallback();
+        dispatcher.addListener(callback);
+
+        dispatcher.onStartListen();
+        dispatcher.onMicActivity(2.5);
+        dispatcher.onDecoding();
+        dispatcher.onError(SpeechResultCallback.MODEL_NOT_FOUND, "missing");
+
+        assertTrue(callback.mEvents.isEmpty());
+        for (Runnable task : queue) {
+            task.run();
+        }
+        assertEquals(4, callback.mEvents.size());
+        assertEquals("start", callback.mEvents.get(0));
+        assertEquals("mic 2.5", callback.mEvents.get(1));
+        assertEquals("decoding", callback.mEvents.get(2));
+        assertEquals("error 1 missing", callback.mEvents.get(3));
+    }
+
+    @Test
+    public void listenerCanRemoveItselfDuringDelivery() {
+        SpeechEventDispatcher dispatcher = new SpeechEventDispatcher(Runnable::run);
+        RecordingCallback other = new RecordingCallback();
+        RecordingCallback self = new RecordingCallback() {
+            @Override
+            public void onNoVoice() {
+                super.onNoVoice();
+                dispatcher.removeListener(this);
+            }
+        };
+        dispatcher.addListener(self);
+        dispatcher.addListener(other);
+
+        dispatcher.onNoVoice();
+        dispatcher.onNoVoice();
+
+        assertEquals(1, self.mEvents.size());
+        assertEquals(2, other.mEvents.size());
+    }
+}
@@ -0,0 +1,47 @@
+package com.mozilla.speechlibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpeechServiceSettingsTest {
+
+    private interface Setter {
+        void set(SpeechServiceSettings.Builder builder);
+    }
+
+    private static void assertRejected(String name, Setter setter) {
+        try {
+            setter.set(new SpeechServiceSettings.Builder());
+            fail(name);
+
+        } catch (IllegalArgumentException expected) {
+            // The sample counts the endpointer and the buffers are sized with stay positive
+        }
+    }
+
+    @Test
+    public void negativeDurations_areRejected() {
+        assertRejected("hangover", builder -> builder.withHangoverMs(-1));
+        assertRejected("min speech", builder -> builder.withMinSpeechMs(-1));
+        assertRejected("max utterance", builder -> builder.withMaxUtteranceMs(-1));
+        assertRejected("no max utterance", builder -> builder.withMaxUtteranceMs(0));
+        assertRejected("pre-roll", builder -> builder.withPreRollMs(-300));
+        assertRejected("partial results", builder -> builder.withPartialResultIntervalMs(-1));
+    }
+
+    @Test
+    public void zeroDurations_turnFeaturesOff() {
+        SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                .withHangoverMs(0)
+                .withMinSpeechMs(0)
+                .withPreRollMs(0)
+                .withPartialResultIntervalMs(0)
+                .build();
+
+        assertEquals(0, settings.getHangoverMs());
+        assertEquals(0, settings.getMinSpeechMs());
+        assertEquals(0, settings.getPreRollMs());
+        assertEquals(0, settings.getPartialResultIntervalMs());
+    }
+}
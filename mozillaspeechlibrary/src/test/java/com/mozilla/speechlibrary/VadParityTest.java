@@ -0,0 +1,187 @@
+package com.mozilla.speechlibrary;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the Java VAD against decisions and scores recorded from the C implementation, in
+ * {@code vad_reference.txt}. To regenerate it, run {@link #main(String[])} with
+ * {@code libwebrtc_jni.so} built for the host on {@code java.library.path}.
+ */
+public class VadParityTest {
+
+    private static final int[] SAMPLE_RATES = { 8000, 16000, 32000, 48000 };
+    private static final int[] FRAME_MS = { 10, 20, 30 };
+    private static final String REFERENCE = "/vad_reference.txt";
+
+    /**
+     * Six seconds of test audio: silence, noise, a harmonic signal with a moving pitch and
+     * formants, clipping, DC steps and clicks. Only uses StrictMath so it's the same everywhere.
+     */
+    static short[] corpus(int sampleRate) {
+        Random random = new Random(sampleRate);
+        short[] pcm = new short[sampleRate * 6];
+        int segment = sampleRate / 2;
+        double phase = 0;
+
+        for (int i = 0; i < pcm.length; i++) {
+            double t = (double) i / sampleRate;
+            double v;
+            switch (i / segment) {
+                case 0:
+                    v = 0;
+                    break;
+                case 1:
+                case 11:
+                    v = random.nextGaussian() * 30;
+                    break;
+                case 2:
+                case 8:
+                    phase += 2 * StrictMath.PI * (110 + 50 * StrictMath.sin(2 * StrictMath.PI * 3 * t)) / sampleRate;
+                    v = voiced(phase, t) + random.nextGaussian() * 30;
+                    break;
+                case 3:
+                    v = random.nextGaussian() * 2000;
+                    break;
+                case 4:
+                    phase += 2 * StrictMath.PI * 180 / sampleRate;
+                    v = voiced(phase, t) + random.nextGaussian() * 1500;
+                    break;
+                case 5:
+                    v = 50000 * StrictMath.sin(2 * StrictMath.PI * 440 * t);
+                    break;
+                case 6:
+                    v = (i / (sampleRate / 10)) % 2 == 0 ? 12000 : -12000;
+                    break;
+                case 7:
+                    v = i % (sampleRate / 8) == 0 ? 32767 : random.nextGaussian() * 10;
+                    break;
+                case 9:
+                    double f = 100 + 3000 * (t - 4.5) * 2;
+                    v = 8000 * (t - 4.5) * 2 * StrictMath.sin(2 * StrictMath.PI * f * t);
+                    break;
+                default:
+                    v = random.nextGaussian() * 20000;
+                    break;
+            }
+            pcm[i] = (short) StrictMath.max(-32768, StrictMath.min(32767, StrictMath.round(v)));
+        }
+        return pcm;
+    }
+
+    private static double voiced(double phase, double t) {
+        double v = 0;
+        for (int h = 1; h <= 24; h++) {
+            // Crude formants around 700 and 1200 Hz
+            double gain = 1.0 / h + (h == 5 || h == 6 || h == 9 ? 0.6 : 0);
+            v += gain * StrictMath.sin(h * phase);
+        }
+        return 5000 * v * (0.6 + 0.4 * StrictMath.sin(2 * StrictMath.PI * 4 * t));
+    }
+
+    /**
+     * One line of the reference: rate, frame length, mode, the decision of every frame and a
+     * CRC32 over the scores of every frame.
+     */
+    private static String run(Vad vad, short[] pcm, int frameLength) {
+        VadScores scores = new VadScores();
+        StringBuilder decisions = new StringBuilder();
+        CRC32 crc = new CRC32();
+        ByteBuffer bytes = ByteBuffer.allocate(VadScores.SIZE * 4);
+
+        assertEquals(0, vad.start());
+        for (int offset = 0; offset + frameLength <= pcm.length; offset += frameLength) {
+            decisions.append(vad.feed(pcm, offset, frameLength, scores));
+            bytes.clear();
+            bytes.asIntBuffer().put(scores.mValues);
+            crc.update(bytes.array());
+        }
+        vad.close();
+
+        return vad.getSampleRate() + " " + frameLength + " " + vad.getMode() + " " + decisions +
+                " " + Long.toHexString(crc.getValue());
+    }
+
+    private static BufferedReader reference() {
+        InputStream in = VadParityTest.class.getResourceAsStream(REFERENCE);
+        assertNotNull(REFERENCE, in);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void javaImplementation_matchesNative() throws Exception {
+        int configs = 0;
+        try (BufferedReader reader = reference()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split(" ");
+                int sampleRate = Integer.parseInt(fields[0]);
+                int frameLength = Integer.parseInt(fields[1]);
+                Vad vad = new Vad(sampleRate, Vad.Mode.valueOf(fields[2]), Vad.Implementation.JAVA);
+
+                assertEquals(line, run(vad, corpus(sampleRate), frameLength));
+                configs++;
+            }
+        }
+
+        assertEquals(SAMPLE_RATES.length * FRAME_MS.length * Vad.Mode.values().length, configs);
+    }
+
+    @Test
+    public void javaImplementation_feedPathsAgree() {
+        int sampleRate = 16000;
+        int frameLength = 320;
+        short[] pcm = corpus(sampleRate);
+
+        Vad vad = new Vad(sampleRate, Vad.Mode.VERY_AGGRESSIVE, Vad.Implementation.JAVA);
+        assertEquals(-1, vad.feed(pcm, frameLength));
+        vad.start();
+        byte[] batch = vad.feedFrames(pcm, frameLength);
+
+        ByteBuffer bytes = ByteBuffer.allocateDirect(frameLength * 2).order(ByteOrder.nativeOrder());
+        ShortBuffer shorts = bytes.asShortBuffer();
+        vad.start();
+        for (int i = 0; i < batch.length; i++) {
+            shorts.clear();
+            shorts.put(pcm, i * frameLength, frameLength);
+            shorts.flip();
+            int result = i % 2 == 0 ? vad.feed(shorts, frameLength) : vad.feed(bytes, frameLength);
+            assertEquals("frame " + i, batch[i], result);
+        }
+
+        assertEquals(-1, vad.feed(pcm, 0, 100));
+        vad.close();
+        assertEquals(-1, vad.feed(pcm, frameLength));
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = args.length > 0 ? new PrintStream(args[0], "UTF-8") : System.out;
+        out.println("# Generated by VadParityTest#main with the native implementation");
+        for (int sampleRate : SAMPLE_RATES) {
+            short[] pcm = corpus(sampleRate);
+            for (int ms : FRAME_MS) {
+                for (Vad.Mode mode : Vad.Mode.values()) {
+                    Vad vad = new Vad(sampleRate, mode, Vad.Implementation.NATIVE);
+                    out.println(run(vad, pcm, sampleRate / 1000 * ms));
+                }
+            }
+        }
+        out.close();
+    }
+}
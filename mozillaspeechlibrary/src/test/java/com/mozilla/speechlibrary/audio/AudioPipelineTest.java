@@ -0,0 +1,226 @@
+package com.mozilla.speechlibrary.audio;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AudioPipelineTest {
+
+    private static final int FRAME = 320;
+    private static final int QUEUE = 16000;
+
+    private static short[] ramp(int len) {
+        short[] samples = new short[len];
+        for (int i = 0; i < len; i++) {
+            samples[i] = (short) (i * 7);
+        }
+        return samples;
+    }
+
+    private static AudioPipeline pipeline(AudioPipeline.Threading threading) {
+        return new AudioPipeline(threading, FRAME, QUEUE, ShortRingBuffer.OverflowPolicy.BLOCK, Thread::new);
+    }
+
+    /**
+     * Collects what reaches the end of the pipeline, optionally taking its time.
+     */
+    private static class Collector implements AudioPipeline.Sink {
+        private final long mDelayNanos;
+        short[] mSamples = new short[0];
+        volatile long mEndNanos;
+
+        Collector(long delayNanos) {
+            mDelayNanos = delayNanos;
+        }
+
+        @Override
+        public void write(@NonNull short[] buffer, int pos, int len) {
+            int size = mSamples.length;
+            mSamples = Arrays.copyOf(mSamples, size + len);
+            System.arraycopy(buffer, pos, mSamples, size, len);
+            if (mDelayNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(mDelayNanos);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mEndNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reads as fast as possible, and notes when it ran out.
+     */
+    private static class TimedSource extends BufferAudioSource {
+        volatile long mEndNanos;
+
+        TimedSource(short[] samples) {
+            super(samples, 16000, 1, Pacing.AS_FAST_AS_POSSIBLE);
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int len) throws java.io.IOException {
+            int read = super.read(buffer, offset, len);
+            if (read < 0 && mEndNanos == 0) {
+                mEndNanos = System.nanoTime();
+            }
+            return read;
+        }
+    }
+
+    // Inverts every frame so the analysis output can be told from its input
+    private static final AudioPipeline.Analysis INVERT = (frame, len, out) -> {
+        for (int i = 0; i < len; i++) {
+            frame[i] = (short) ~frame[i];
+        }
+        out.write(frame, 0, len);
+        return true;
+    };
+
+    @Test(timeout = 10000)
+    public void everyThreading_deliversTheSameAudio() throws Exception {
+        short[] input = ramp(FRAME * 100 + 17);
+        short[] expected = new short[input.length];
+        for (int i = 0; i < input.length; i++) {
+            expected[i] = (short) ~input[i];
+        }
+
+        for (AudioPipeline.Threading threading : AudioPipeline.Threading.values()) {
+            AudioPipeline pipeline = pipeline(threading);
+            TimedSource source = new TimedSource(input);
+            Collector sink = new Collector(0);
+            source.start();
+            pipeline.run(source, INVERT, sink);
+
+            assertArrayEquals(threading.name(), expected, sink.mSamples);
+            assertEquals(threading.name(), 101, pipeline.getFrames(AudioPipeline.Stage.CAPTURE));
+            assertEquals(threading.name(), 101, pipeline.getFrames(AudioPipeline.Stage.ANALYSIS));
+            assertEquals(threading.name(), 0, pipeline.getDropped(AudioPipeline.Stage.ANALYSIS));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void queues_onlyBetweenThreads() throws Exception {
+        AudioPipeline single = pipeline(AudioPipeline.Threading.SINGLE);
+        AudioPipeline capture = pipeline(AudioPipeline.Threading.CAPTURE);
+        AudioPipeline perStage = pipeline(AudioPipeline.Threading.PER_STAGE);
+        for (AudioPipeline pipeline : new AudioPipeline[]{single, capture, perStage}) {
+            TimedSource source = new TimedSource(ramp(FRAME * 10));
+            source.start();
+            pipeline.run(source, INVERT, new Collector(0));
+        }
+
+        assertEquals(0, single.getQueueCapacity(AudioPipeline.Stage.ANALYSIS));
+        assertTrue(capture.getQueueCapacity(AudioPipeline.Stage.ANALYSIS) >= QUEUE);
+        assertEquals(0, capture.getQueueCapacity(AudioPipeline.Stage.ENCODE));
+        assertTrue(perStage.getQueueCapacity(AudioPipeline.Stage.ENCODE) >= QUEUE);
+        assertTrue(perStage.getMaxQueueSize(AudioPipeline.Stage.ANALYSIS) >= FRAME);
+        assertEquals(0, perStage.getQueueSize(AudioPipeline.Stage.ANALYSIS));
+        assertEquals(0, perStage.getQueueSize(AudioPipeline.Stage.ENCODE));
+    }
+
+    @Test(timeout = 10000)
+    public void slowEncoder_doesNotHoldUpCapture() throws Exception {
+        short[] input = ramp(FRAME * 50);
+        long delay = TimeUnit.MILLISECONDS.toNanos(4);
+
+        AudioPipeline single = pipeline(AudioPipeline.Threading.SINGLE);
+        TimedSource source = new TimedSource(input);
+        Collector sink = new Collector(delay);
+        source.start();
+        single.run(source, INVERT, sink);
+        // The encoder ran between the reads
+        assertTrue(single.getBusyNanos(AudioPipeline.Stage.CAPTURE) >= 50 * delay);
+
+        AudioPipeline perStage = pipeline(AudioPipeline.Threading.PER_STAGE);
+        source = new TimedSource(input);
+        sink = new Collector(delay);
+        source.start();
+        perStage.run(source, INVERT, sink);
+
+        // Everything was captured long before the encoder caught up
+        assertTrue(sink.mEndNanos - source.mEndNanos > 30 * delay);
+        assertTrue(perStage.getBusyNanos(AudioPipeline.Stage.CAPTURE) < 10 * delay);
+        assertTrue(perStage.getMaxQueueSize(AudioPipeline.Stage.ENCODE) > 10 * FRAME);
+        assertEquals(input.length, sink.mSamples.length);
+    }
+
+    @Test(timeout = 10000)
+    public void emptyRead_doesNotEndTheSession() throws Exception {
+        short[] input = ramp(FRAME * 20);
+        for (AudioPipeline.Threading threading : AudioPipeline.Threading.values()) {
+            AudioPipeline pipeline = pipeline(threading);
+            // Has nothing once mid-stream, like a resampler that hasn't filled a frame yet
+            BufferAudioSource source = new BufferAudioSource(input, 16000, 1,
+                    PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE) {
+                private int mReads;
+
+                @Override
+                public int read(short[] buffer, int offset, int len) throws java.io.IOException {
+                    return ++mReads == 10 ? 0 : super.read(buffer, offset, len);
+                }
+            };
+            Collector sink = new Collector(0);
+            source.start();
+            pipeline.run(source, (frame, len, out) -> {
+                out.write(frame, 0, len);
+                return true;
+            }, sink);
+
+            assertArrayEquals(threading.name(), input, sink.mSamples);
+            assertEquals(threading.name(), 20, pipeline.getFrames(AudioPipeline.Stage.CAPTURE));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void analysis_endsTheSession() throws Exception {
+        for (AudioPipeline.Threading threading : AudioPipeline.Threading.values()) {
+            AudioPipeline pipeline = pipeline(threading);
+            // Never runs out, paced so capture can't get far ahead of the analysis
+            BufferAudioSource source = new BufferAudioSource(ramp(16000 * 60), 16000, 1,
+                    PacedAudioSource.Pacing.REAL_TIME);
+            Collector sink = new Collector(0);
+            int[] frames = {0};
+            source.start();
+            pipeline.run(source, (frame, len, out) -> {
+                out.write(frame, 0, len);
+                return ++frames[0] < 10;
+            }, sink);
+            source.stop();
+
+            assertEquals(threading.name(), 10, frames[0]);
+            assertEquals(threading.name(), 10 * FRAME, sink.mSamples.length);
+            assertTrue(threading.name(), pipeline.getFrames(AudioPipeline.Stage.CAPTURE) < 15);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void errors_reachTheCaller() throws Exception {
+        for (AudioPipeline.Threading threading : AudioPipeline.Threading.values()) {
+            AudioPipeline pipeline = pipeline(threading);
+            BufferAudioSource source = new BufferAudioSource(ramp(16000 * 60), 16000, 1,
+                    PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE);
+            int[] writes = {0};
+            source.start();
+            try {
+                pipeline.run(source, INVERT, (buffer, pos, len) -> {
+                    if (++writes[0] == 5) {
+                        throw new IllegalStateException("encoder failed");
+                    }
+                });
+                fail(threading.name());
+
+            } catch (IllegalStateException e) {
+                assertEquals("encoder failed", e.getMessage());
+            }
+            source.stop();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EndpointerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = 320; // 20 ms
+
+    private Endpointer newEndpointer() {
+        return new Endpointer(SAMPLE_RATE, 500, 100, 2000);
+    }
+
+    private static Endpointer.State feed(Endpointer endpointer, boolean voice, int frames) {
+        Endpointer.State state = endpointer.getState();
+        for (int i = 0; i < frames && !endpointer.isDone(); i++) {
+            state = endpointer.feed(voice, FRAME);
+        }
+        return state;
+    }
+
+    @Test
+    public void endOfSpeech_afterHangover() {
+        Endpointer endpointer = newEndpointer();
+
+        assertEquals(Endpointer.State.LISTENING, feed(endpointer, false, 10));
+        assertEquals(Endpointer.State.SPEECH, feed(endpointer, true, 10));
+        assertEquals(Endpointer.State.SPEECH, feed(endpointer, false, 25));
+        assertEquals(Endpointer.State.END_OF_SPEECH, feed(endpointer, false, 1));
+
+        // 500 ms hangover is 25 frames, the 26th one ends the utterance
+        assertEquals(26 * FRAME, endpointer.getTotalSamples() - endpointer.getLastSpeechSample());
+        assertEquals(10 * FRAME, endpointer.getSpeechStartSample());
+    }
+
+    @Test
+    public void voiceResetsHangover() {
+        Endpointer endpointer = newEndpointer();
+
+        feed(endpointer, true, 10);
+        feed(endpointer, false, 20);
+        feed(endpointer, true, 1);
+        assertEquals(Endpointer.State.SPEECH, feed(endpointer, false, 20));
+        assertFalse(endpointer.isDone());
+    }
+
+    @Test
+    public void noVoice_whenSpeechTooShort() {
+        Endpointer endpointer = newEndpointer();
+
+        feed(endpointer, true, 3);
+        assertEquals(Endpointer.State.NO_VOICE, feed(endpointer, false, 200));
+        assertFalse(endpointer.hasSpeech());
+        assertEquals(SAMPLE_RATE * 2 + FRAME, endpointer.getTotalSamples());
+    }
+
+    @Test
+    public void maxUtterance_withContinuousSpeech() {
+        Endpointer endpointer = newEndpointer();
+
+        assertEquals(Endpointer.State.MAX_UTTERANCE, feed(endpointer, true, 200));
+        assertTrue(endpointer.hasSpeech());
+    }
+}
@@ -0,0 +1,75 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EnergyGateTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = 320;
+
+    private static short[] noise(Random random, double rms) {
+        short[] frame = new short[FRAME];
+        for (int i = 0; i < FRAME; i++) {
+            frame[i] = (short) Math.round(random.nextGaussian() * rms);
+        }
+        return frame;
+    }
+
+    @Test
+    public void quietRoom_isGatedExceptForRefreshFrames() {
+        EnergyGate gate = new EnergyGate(SAMPLE_RATE);
+        Random random = new Random(1);
+
+        int passed = 0;
+        for (int i = 0; i < 500; i++) {
+            if (!gate.isSilence(noise(random, 20), 0, FRAME, true)) {
+                passed++;
+            }
+        }
+
+        assertEquals(500, gate.getFrames());
+        assertEquals(500 - passed, gate.getSkippedFrames());
+        // 10 s of audio, 500 ms of warm up and then one refresh frame every 500 ms
+        assertTrue(passed >= 40 && passed <= 45);
+        assertEquals(-64, gate.getNoiseFloorDbfs(), 3);
+    }
+
+    @Test
+    public void louderFrame_goesToVad() {
+        EnergyGate gate = new EnergyGate(SAMPLE_RATE);
+        Random random = new Random(2);
+
+        for (int i = 0; i < 50; i++) {
+            gate.isSilence(noise(random, 20), 0, FRAME, true);
+        }
+
+        // 10 dB above the floor, still far below the absolute ceiling
+        assertFalse(gate.isSilence(noise(random, 64), 0, FRAME, true));
+    }
+
+    @Test
+    public void loudRoom_isNeverGated() {
+        EnergyGate gate = new EnergyGate(SAMPLE_RATE);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 200; i++) {
+            assertFalse(gate.isSilence(noise(random, 1000), 0, FRAME, true));
+        }
+        assertEquals(0, gate.getSkippedFrames());
+    }
+
+    @Test
+    public void vadHangover_isNeverGated() {
+        EnergyGate gate = new EnergyGate(SAMPLE_RATE);
+        short[] silence = new short[FRAME];
+
+        for (int i = 0; i < 50; i++) {
+            assertFalse(gate.isSilence(silence, 0, FRAME, false));
+        }
+        assertTrue(gate.isSilence(silence, 0, FRAME, true));
+    }
+}
@@ -0,0 +1,66 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MicLevelMeterTest {
+
+    @Test
+    public void realFft_matchesDft() {
+        int n = 64;
+        float[] input = new float[n];
+        for (int i = 0; i < n; i++) {
+            input[i] = (float) (Math.sin(i * 0.7) + 0.25 * Math.cos(i * 2.1) + (i % 5) * 0.1);
+        }
+
+        float[] re = new float[n / 2 + 1];
+        float[] im = new float[n / 2 + 1];
+        new RealFft(n).forward(input, 0, re, im);
+
+        for (int k = 0; k <= n / 2; k++) {
+            double dftRe = 0;
+            double dftIm = 0;
+            for (int i = 0; i < n; i++) {
+                dftRe += input[i] * Math.cos(2 * Math.PI * k * i / n);
+                dftIm -= input[i] * Math.sin(2 * Math.PI * k * i / n);
+            }
+            assertEquals("re[" + k + "]", dftRe, re[k], 1e-3);
+            assertEquals("im[" + k + "]", dftIm, im[k], 1e-3);
+        }
+    }
+
+    @Test
+    public void rmsAndDbfs_fullScaleSine() {
+        short[] frame = new short[320];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) (0x7fff * Math.sin(2 * Math.PI * i / 32));
+        }
+
+        double rms = new MicLevelMeter(frame.length, MicLevelMeter.Mode.RMS).process(frame, 0, frame.length);
+        double dbfs = new MicLevelMeter(frame.length, MicLevelMeter.Mode.DBFS).process(frame, 0, frame.length);
+
+        assertEquals(Math.sqrt(0.5), rms, 1e-3);
+        assertEquals(-3.01, dbfs, 0.01);
+    }
+
+    @Test
+    public void bands_peakInMatchingBand() {
+        short[] frame = new short[320];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) (10000 * Math.sin(2 * Math.PI * 2000 * i / 16000));
+        }
+
+        MicLevelMeter meter = new MicLevelMeter(frame.length, MicLevelMeter.Mode.BANDS, 16000,
+                MicLevelMeter.DEFAULT_BAND_EDGES);
+        meter.process(frame, 0, frame.length);
+        float[] bands = meter.getBands();
+
+        assertEquals(MicLevelMeter.DEFAULT_BAND_EDGES.length - 1, bands.length);
+        for (int b = 0; b < bands.length; b++) {
+            if (b != 2) {
+                assertTrue(bands[2] > bands[b] + 20);
+            }
+        }
+    }
+}
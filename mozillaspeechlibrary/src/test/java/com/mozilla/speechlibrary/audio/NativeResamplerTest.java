@@ -0,0 +1,137 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Needs {@code libwebrtc_jni.so} built for the host on {@code java.library.path}, the tests are
+ * skipped without it.
+ */
+public class NativeResamplerTest {
+
+    private static final int TONE_HZ = 1000;
+    private static final double AMPLITUDE = 8000;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        boolean loaded;
+        try {
+            NativeResampler.isSupported(48000, 2, NativeResampler.OUTPUT_SAMPLE_RATE);
+            loaded = true;
+
+        } catch (UnsatisfiedLinkError e) {
+            loaded = false;
+        }
+        assumeTrue("libwebrtc_jni not on java.library.path", loaded);
+    }
+
+    private static short[] tone(int sampleRate, int channels, int ms) {
+        int frames = sampleRate * ms / 1000;
+        short[] pcm = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            short v = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * TONE_HZ * i / sampleRate));
+            for (int c = 0; c < channels; c++) {
+                pcm[i * channels + c] = v;
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * Converts in reads of {@code chunk} samples like the capture loop.
+     */
+    private static short[] resample(int sampleRate, int channels, short[] in, int chunk) {
+        try (NativeResampler resampler = new NativeResampler(sampleRate, channels)) {
+            short[] out = new short[resampler.getOutputSize(in.length) + 160];
+            int written = 0;
+            for (int pos = 0; pos < in.length; pos += chunk) {
+                int len = Math.min(chunk, in.length - pos);
+                written += resampler.process(in, pos, len, out, written);
+            }
+            short[] result = new short[written];
+            System.arraycopy(out, 0, result, 0, written);
+            return result;
+        }
+    }
+
+    // Skips the filter's start up, then checks level and pitch of what's left
+    private static void assertTone(short[] out) {
+        int start = out.length / 4;
+        double energy = 0;
+        int crossings = 0;
+        for (int i = start; i < out.length; i++) {
+            energy += (double) out[i] * out[i];
+            if (i > start && (out[i - 1] < 0) != (out[i] < 0)) {
+                crossings++;
+            }
+        }
+        double rms = Math.sqrt(energy / (out.length - start));
+        double hz = crossings / 2.0 * NativeResampler.OUTPUT_SAMPLE_RATE / (out.length - start);
+
+        assertEquals(AMPLITUDE / Math.sqrt(2), rms, AMPLITUDE * 0.05);
+        assertEquals(TONE_HZ, hz, 10);
+    }
+
+    @Test
+    public void stereo48k_toMono16k() {
+        // 20 ms reads
+        short[] out = resample(48000, 2, tone(48000, 2, 1000), 1920);
+        assertEquals(16000, out.length);
+        assertTone(out);
+    }
+
+    @Test
+    public void mono32k_to16k() {
+        short[] out = resample(32000, 1, tone(32000, 1, 1000), 640);
+        assertEquals(16000, out.length);
+        assertTone(out);
+    }
+
+    @Test
+    public void output_doesNotDependOnChunks() {
+        short[] in = tone(48000, 2, 500);
+        short[] whole = resample(48000, 2, in, in.length);
+        for (int chunk : new int[]{2, 14, 960, 1000}) {
+            assertArrayEquals("chunk " + chunk, whole, resample(48000, 2, in, chunk));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void emptySourceRead_returnsShortRead() throws IOException {
+        // Has nothing yet, like a non-blocking AudioRecord
+        AudioSource empty = new AudioSource() {
+            @Override
+            public int getSampleRate() {
+                return 48000;
+            }
+
+            @Override
+            public int getChannels() {
+                return 2;
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public int read(short[] buffer, int offset, int len) {
+                return 0;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+
+        ResamplingAudioSource source = new ResamplingAudioSource(empty, 20);
+        source.start();
+        assertEquals(0, source.read(new short[320], 0, 320));
+        source.stop();
+    }
+}
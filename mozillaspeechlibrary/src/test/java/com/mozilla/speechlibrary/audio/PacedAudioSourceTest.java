@@ -0,0 +1,74 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class PacedAudioSourceTest {
+
+    /**
+     * Blocks in a read until it's closed, which then fails like a closed file channel.
+     */
+    private static class BlockingSource extends PacedAudioSource {
+        final CountDownLatch mReading = new CountDownLatch(1);
+        final CountDownLatch mClosed = new CountDownLatch(1);
+
+        BlockingSource() {
+            super(16000, 1, Pacing.AS_FAST_AS_POSSIBLE);
+        }
+
+        @Override
+        void open() {
+        }
+
+        @Override
+        int readSamples(short[] buffer, int offset, int len) throws IOException {
+            mReading.countDown();
+            try {
+                mClosed.await();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new AsynchronousCloseException();
+        }
+
+        @Override
+        void close() {
+            mClosed.countDown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void stopDuringRead_endsTheStream() throws Exception {
+        BlockingSource source = new BlockingSource();
+        source.start();
+        Thread stopper = new Thread(() -> {
+            try {
+                source.mReading.await();
+
+            } catch (InterruptedException e) {
+                return;
+            }
+            source.stop();
+        });
+        stopper.start();
+
+        assertEquals(-1, source.read(new short[320], 0, 320));
+        stopper.join();
+    }
+
+    @Test(timeout = 10000, expected = AsynchronousCloseException.class)
+    public void failureWithoutStop_isReported() throws Exception {
+        BlockingSource source = new BlockingSource();
+        source.start();
+        // Fails on its own, nothing stopped it
+        source.mClosed.countDown();
+
+        source.read(new short[320], 0, 320);
+    }
+}
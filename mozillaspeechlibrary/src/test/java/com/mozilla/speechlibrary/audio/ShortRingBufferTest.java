@@ -0,0 +1,106 @@
+package com.mozilla.speechlibrary.audio;
+
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+
+import static org.junit.Assert.*;
+
+public class ShortRingBufferTest {
+
+    private static short[] ramp(int start, int len) {
+        short[] samples = new short[len];
+        for (int i = 0; i < len; i++) {
+            samples[i] = (short) (start + i);
+        }
+        return samples;
+    }
+
+    @Test
+    public void dropOldest_keepsNewestSamples() {
+        ShortRingBuffer ring = new ShortRingBuffer(8, ShortRingBuffer.OverflowPolicy.DROP_OLDEST);
+        ring.write(ramp(0, 6), 0, 6);
+        ring.write(ramp(6, 6), 0, 6);
+
+        short[] out = new short[8];
+        assertEquals(8, ring.read(out, 0, out.length));
+        assertArrayEquals(ramp(4, 8), out);
+        assertEquals(4, ring.getDropped());
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void error_throwsWhenFull() {
+        ShortRingBuffer ring = new ShortRingBuffer(8, ShortRingBuffer.OverflowPolicy.ERROR);
+        ring.write(ramp(0, 6), 0, 6);
+        ring.write(ramp(6, 6), 0, 6);
+    }
+
+    @Test
+    public void close_drainsThenEnds() {
+        ShortRingBuffer ring = new ShortRingBuffer(8, ShortRingBuffer.OverflowPolicy.BLOCK);
+        ring.write(ramp(0, 3), 0, 3);
+        ring.close();
+
+        short[] out = new short[8];
+        assertEquals(3, ring.read(out, 0, out.length));
+        assertEquals(-1, ring.read(out, 0, out.length));
+    }
+
+    @Test(timeout = 10000)
+    public void readFully_waitsForWholeFrames() throws Exception {
+        ShortRingBuffer ring = new ShortRingBuffer(64, ShortRingBuffer.OverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                ring.write(ramp(i * 3, 3), 0, 3);
+            }
+            ring.close();
+        });
+        producer.start();
+
+        short[] out = new short[8];
+        assertEquals(8, ring.readFully(out, 0, 8));
+        assertArrayEquals(ramp(0, 8), out);
+        assertEquals(8, ring.readFully(out, 0, 8));
+        assertArrayEquals(ramp(8, 8), out);
+        assertEquals(8, ring.readFully(out, 0, 8));
+        // Short only at the end of the stream
+        assertEquals(6, ring.readFully(out, 0, 8));
+        assertArrayEquals(ramp(24, 6), java.util.Arrays.copyOf(out, 6));
+        assertEquals(-1, ring.readFully(out, 0, 8));
+        producer.join();
+
+        assertTrue(ring.getMaxSize() >= 3);
+        assertTrue(ring.getMaxSize() <= 30);
+    }
+
+    @Test(timeout = 10000)
+    public void block_deliversEverySampleInOrderAcrossThreads() throws Exception {
+        int total = 1_000_000;
+        ShortRingBuffer ring = new ShortRingBuffer(256, ShortRingBuffer.OverflowPolicy.BLOCK);
+
+        Thread producer = new Thread(() -> {
+            short[] frame = new short[100];
+            for (int written = 0; written < total; written += frame.length) {
+                for (int i = 0; i < frame.length; i++) {
+                    frame[i] = (short) (written + i);
+                }
+                ring.write(frame, 0, frame.length);
+            }
+            ring.close();
+        });
+        producer.start();
+
+        short[] out = new short[77];
+        int expected = 0;
+        int read;
+        while ((read = ring.read(out, 0, out.length)) > 0) {
+            for (int i = 0; i < read; i++) {
+                assertEquals((short) expected++, out[i]);
+            }
+        }
+        producer.join();
+
+        assertEquals(total, expected);
+        assertEquals(0, ring.getDropped());
+    }
+}
@@ -0,0 +1,97 @@
+package com.mozilla.speechlibrary.audio;
+
+import com.mozilla.speechlibrary.Vad;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VadAdaptationTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = 320;
+
+    private static short[] noise(Random random, double dbfs) {
+        double rms = 32768 * Math.pow(10, dbfs / 20);
+        short[] frame = new short[FRAME];
+        for (int i = 0; i < FRAME; i++) {
+            frame[i] = (short) Math.max(-32768, Math.min(32767, Math.round(random.nextGaussian() * rms)));
+        }
+        return frame;
+    }
+
+    /**
+     * Feeds {@code ms} of noise frames, returns the number of environment changes.
+     */
+    private static int feed(VadAdaptation adaptation, Random random, double dbfs, boolean voice, int ms) {
+        int changes = 0;
+        for (int i = 0; i < ms / 20; i++) {
+            if (adaptation.update(noise(random, dbfs), 0, FRAME, voice)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void quietRoom_shortensHangoverAfterHoldTime() {
+        VadAdaptation adaptation = new VadAdaptation(SAMPLE_RATE, Vad.Mode.VERY_AGGRESSIVE, 1500);
+        Random random = new Random(1);
+
+        assertEquals(0, feed(adaptation, random, -70, false, VadAdaptation.HOLD_MS - 100));
+        assertEquals(VadAdaptation.Environment.NORMAL, adaptation.getEnvironment());
+        assertEquals(1500, adaptation.getHangoverMs());
+
+        assertEquals(1, feed(adaptation, random, -70, false, 200));
+        assertEquals(VadAdaptation.Environment.QUIET, adaptation.getEnvironment());
+        assertEquals(VadAdaptation.QUIET_HANGOVER_MS, adaptation.getHangoverMs());
+        assertEquals(Vad.Mode.VERY_AGGRESSIVE, adaptation.getMode());
+        assertEquals(-70, adaptation.getNoiseDbfs(), 1);
+    }
+
+    @Test
+    public void noisyEnvironment_lowersAggressiveness() {
+        VadAdaptation adaptation = new VadAdaptation(SAMPLE_RATE, Vad.Mode.VERY_AGGRESSIVE, 1500);
+        Random random = new Random(2);
+
+        assertEquals(1, feed(adaptation, random, -35, false, 2000));
+        assertEquals(VadAdaptation.Environment.NOISY, adaptation.getEnvironment());
+        assertEquals(Vad.Mode.AGGRESSIVE, adaptation.getMode());
+        assertEquals(1500, adaptation.getHangoverMs());
+    }
+
+    @Test
+    public void lowSnr_isNoisy() {
+        VadAdaptation adaptation = new VadAdaptation(SAMPLE_RATE, Vad.Mode.AGGRESSIVE, 1500);
+        Random random = new Random(3);
+
+        feed(adaptation, random, -55, false, 500);
+        assertTrue(Double.isNaN(adaptation.getSnrDb()));
+        assertEquals(1, feed(adaptation, random, -48, true, 1500));
+        assertEquals(VadAdaptation.Environment.NOISY, adaptation.getEnvironment());
+        assertEquals(Vad.Mode.LOW_BITRATE, adaptation.getMode());
+        assertTrue(adaptation.getSnrDb() < VadAdaptation.NOISY_SNR_DB);
+    }
+
+    @Test
+    public void noiseAroundThreshold_doesNotFlap() {
+        VadAdaptation adaptation = new VadAdaptation(SAMPLE_RATE, Vad.Mode.VERY_AGGRESSIVE, 1500);
+        Random random = new Random(4);
+
+        feed(adaptation, random, -40, false, 2000);
+        assertEquals(VadAdaptation.Environment.NOISY, adaptation.getEnvironment());
+
+        // Within the hysteresis band of the noisy threshold
+        for (int i = 0; i < 20; i++) {
+            feed(adaptation, random, i % 2 == 0 ? -44 : -48, false, 1500);
+        }
+        assertEquals(VadAdaptation.Environment.NOISY, adaptation.getEnvironment());
+        assertEquals(1, adaptation.getChanges());
+
+        assertEquals(1, feed(adaptation, random, -56, false, 4000));
+        assertEquals(VadAdaptation.Environment.NORMAL, adaptation.getEnvironment());
+        assertEquals(Vad.Mode.VERY_AGGRESSIVE, adaptation.getMode());
+    }
+}
@@ -0,0 +1,222 @@
+package com.mozilla.speechlibrary.recognition;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mozilla.speechlibrary.MicLevelPublisher;
+import com.mozilla.speechlibrary.SpeechResultCallback;
+import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.mozilla.speechlibrary.Vad;
+import com.mozilla.speechlibrary.audio.AudioSource;
+import com.mozilla.speechlibrary.audio.BufferAudioSource;
+import com.mozilla.speechlibrary.audio.GainControl;
+import com.mozilla.speechlibrary.audio.MicLevelMeter;
+import com.mozilla.speechlibrary.audio.PacedAudioSource;
+import com.mozilla.speechlibrary.stt.STTClient;
+import com.mozilla.speechlibrary.stt.STTResult;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs sessions through the whole analysis stage on a single pipeline thread: the energy gate,
+ * the VAD, its adaptation, the mic levels, the endpointer, the gain control and the pre-roll,
+ * with a client that drops the audio. Checks that the frames after the warm-up don't allocate.
+ */
+public class CaptureAllocationTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 50;
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int FRAMES = 2000;
+    // A per frame allocation shows up in every window, a one-off like the JIT deoptimizing
+    // code and materializing objects it had optimized away only in one of them
+    private static final int WINDOWS = 3;
+
+    private static class Client implements STTClient {
+        int mProcessed;
+
+        @Override
+        public void initEncoding(int sampleRate) {
+        }
+
+        @Override
+        public void encode(short[] buffer, int pos, int len) {
+        }
+
+        @Override
+        public void endEncoding() {
+        }
+
+        @Override
+        public void process() {
+            mProcessed++;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isRunning() {
+            return true;
+        }
+    }
+
+    private static class Recognition extends SpeechRecognition {
+        final Client mClient = new Client();
+
+        Recognition() {
+            super(null, Runnable::run, new MicLevelPublisher(Runnable::run));
+        }
+
+        @Override
+        Vad createVad(int sampleRate, @NonNull Vad.Mode mode) {
+            return new Vad(sampleRate, mode, Vad.Implementation.JAVA);
+        }
+
+        @Override
+        void log(@NonNull String message) {
+        }
+
+        @Override
+        public void start(@NonNull SpeechServiceSettings settings,
+                          @Nullable AudioSource source,
+                          @NonNull SpeechResultCallback callback) {
+            mStt = mClient;
+            super.start(settings, source, callback);
+        }
+    }
+
+    private static class Levels implements SpeechResultCallback {
+        double mSum;
+        int mErrors;
+
+        @Override
+        public void onStartListen() {
+        }
+
+        @Override
+        public void onMicActivity(double fftsum) {
+            mSum += fftsum;
+        }
+
+        @Override
+        public void onDecoding() {
+        }
+
+        @Override
+        public void onSTTResult(@Nullable STTResult result) {
+        }
+
+        @Override
+        public void onNoVoice() {
+        }
+
+        @Override
+        public void onError(@ErrorType int errorType, @Nullable String error) {
+            mErrors++;
+        }
+    }
+
+    /**
+     * Reads the allocation counter of the capture thread before the read after the warm-up and
+     * then every {@link #FRAMES} reads, so each window covers that many frames of every stage.
+     */
+    private static class MeasuredSource extends BufferAudioSource {
+        private final com.sun.management.ThreadMXBean mThreads;
+        // What the counter itself allocates between two readings, the same every time
+        private final long mOverhead;
+        private int mReads;
+        private long mBefore;
+        int mWindows;
+        long mMinAllocated = Long.MAX_VALUE;
+
+        MeasuredSource(short[] samples, com.sun.management.ThreadMXBean threads) {
+            super(samples, SAMPLE_RATE, 1, Pacing.AS_FAST_AS_POSSIBLE);
+
+            mThreads = threads;
+            long first = allocatedBytes();
+            mOverhead = allocatedBytes() - first;
+        }
+
+        private long allocatedBytes() {
+            return mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int len) throws IOException {
+            mReads++;
+            if (mReads >= WARM_UP_FRAMES && (mReads - WARM_UP_FRAMES) % FRAMES == 0) {
+                long now = allocatedBytes();
+                if (mReads > WARM_UP_FRAMES) {
+                    mMinAllocated = Math.min(mMinAllocated, now - mBefore - mOverhead);
+                    mWindows++;
+                }
+                mBefore = allocatedBytes();
+            }
+            return super.read(buffer, offset, len);
+        }
+    }
+
+    /**
+     * One second of a voiced harmonic signal, then one second of quiet noise, over and over.
+     */
+    private static short[] speech(int frames) {
+        Random random = new Random(1);
+        short[] pcm = new short[frames * FRAME];
+        double phase = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            double v = random.nextGaussian() * 30;
+            if ((i / SAMPLE_RATE) % 2 == 0) {
+                phase += 2 * Math.PI * 140 / SAMPLE_RATE;
+                for (int h = 1; h <= 12; h++) {
+                    v += 3000.0 / h * Math.sin(h * phase);
+                }
+            }
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v)));
+        }
+        return pcm;
+    }
+
+    @Test
+    public void analysis_doesNotAllocatePerFrame() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        short[] speech = speech(WARM_UP_FRAMES + WINDOWS * FRAMES + 50);
+        for (MicLevelMeter.Mode mode : MicLevelMeter.Mode.values()) {
+            SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                    .withMicLevelMode(mode)
+                    .withMicActivityRate(MicLevelPublisher.EVERY_FRAME)
+                    .withVadPreGate(true)
+                    .withAdaptiveVad(true)
+                    .withGainMode(GainControl.Mode.AUTOMATIC)
+                    .withPreRollMs(300)
+                    // Speech all the way through the source
+                    .withHangoverMs(5000)
+                    .withMaxUtteranceMs(Integer.MAX_VALUE)
+                    .build();
+            Recognition recognition = new Recognition();
+            Levels callback = new Levels();
+            MeasuredSource source = new MeasuredSource(speech, threads);
+
+            recognition.start(settings, source, callback);
+
+            assertEquals(mode.name(), 0, callback.mErrors);
+            assertEquals(mode.name() + ": speech heard", 1, recognition.mClient.mProcessed);
+            assertTrue(mode.name(), callback.mSum != 0);
+            assertEquals(mode.name(), WINDOWS, source.mWindows);
+            assertEquals(mode.name() + ": bytes allocated in " + FRAMES + " frames", 0, source.mMinAllocated);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.mozilla.speechlibrary.recognition;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mozilla.speechlibrary.MicLevelPublisher;
+import com.mozilla.speechlibrary.SpeechResultCallback;
+import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.mozilla.speechlibrary.Vad;
+import com.mozilla.speechlibrary.audio.AudioPipeline;
+import com.mozilla.speechlibrary.audio.AudioSource;
+import com.mozilla.speechlibrary.audio.BufferAudioSource;
+import com.mozilla.speechlibrary.audio.PacedAudioSource;
+import com.mozilla.speechlibrary.stt.STTClient;
+import com.mozilla.speechlibrary.stt.STTResult;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpeechRecognitionTest {
+
+    private static class Client implements STTClient {
+        final List<String> mCalls = new ArrayList<>();
+        int mEncoded;
+
+        @Override
+        public void initEncoding(int sampleRate) {
+            mCalls.add("init");
+        }
+
+        @Override
+        public void encode(short[] buffer, int pos, int len) {
+            mEncoded += len;
+        }
+
+        @Override
+        public void endEncoding() {
+            mCalls.add("end");
+        }
+
+        @Override
+        public void process() {
+            mCalls.add("process");
+        }
+
+        @Override
+        public void cancel() {
+            mCalls.add("cancel");
+        }
+
+        @Override
+        public boolean isRunning() {
+            return true;
+        }
+    }
+
+    /**
+     * Runs sessions on the calling thread with the Java VAD and a client that records its calls,
+     * and keeps what it logs.
+     */
+    private static class Recognition extends SpeechRecognition {
+        final Client mClient = new Client();
+        final List<String> mLog = new ArrayList<>();
+
+        Recognition() {
+            super(null, Runnable::run, new MicLevelPublisher(Runnable::run));
+        }
+
+        @Override
+        Vad createVad(int sampleRate, @NonNull Vad.Mode mode) {
+            return new Vad(sampleRate, mode, Vad.Implementation.JAVA);
+        }
+
+        @Override
+        void log(@NonNull String message) {
+            mLog.add(message);
+        }
+
+        @Override
+        public void start(@NonNull SpeechServiceSettings settings,
+                          @Nullable AudioSource source,
+                          @NonNull SpeechResultCallback callback) {
+            mStt = mClient;
+            super.start(settings, source, callback);
+        }
+    }
+
+    private static class Errors implements SpeechResultCallback {
+        final List<String> mErrors = new ArrayList<>();
+        int mNoVoice;
+
+        @Override
+        public void onStartListen() {
+        }
+
+        @Override
+        public void onMicActivity(double fftsum) {
+        }
+
+        @Override
+        public void onDecoding() {
+        }
+
+        @Override
+        public void onSTTResult(@Nullable STTResult result) {
+        }
+
+        @Override
+        public void onNoVoice() {
+            mNoVoice++;
+        }
+
+        @Override
+        public void onError(@ErrorType int errorType, @Nullable String error) {
+            mErrors.add(error);
+        }
+    }
+
+    /**
+     * Silence with one second of a voiced harmonic signal starting at {@code speechMs}.
+     */
+    private static short[] speech(int lengthMs, int speechMs) {
+        short[] pcm = new short[16 * lengthMs];
+        double phase = 0;
+        for (int i = 16 * speechMs; i < Math.min(pcm.length, 16 * (speechMs + 1000)); i++) {
+            phase += 2 * Math.PI * 140 / 16000;
+            double v = 0;
+            for (int h = 1; h <= 12; h++) {
+                v += 3000.0 / h * Math.sin(h * phase);
+            }
+            pcm[i] = (short) Math.round(v);
+        }
+        return pcm;
+    }
+
+    private static SpeechServiceSettings settings() {
+        return new SpeechServiceSettings.Builder()
+                .withMicActivityRate(MicLevelPublisher.DISABLED)
+                .build();
+    }
+
+    @Test
+    public void sourceFailingToStart_reportsTheError() {
+        Recognition recognition = new Recognition();
+        Errors callback = new Errors();
+        AudioSource source = new BufferAudioSource(new short[16000], 16000, 1,
+                PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE) {
+            @Override
+            public void start() throws IOException {
+                throw new IOException("mic busy");
+            }
+        };
+
+        recognition.start(settings(), source, callback);
+
+        assertEquals(1, callback.mErrors.size());
+        assertEquals("mic busy", callback.mErrors.get(0));
+        // Nothing to close, but the client is told to give up
+        assertEquals(1, recognition.mClient.mCalls.size());
+        assertEquals("cancel", recognition.mClient.mCalls.get(0));
+        assertFalse(recognition.isRunning());
+    }
+
+    @Test
+    public void sourceFailingToRead_closesTheEncoderOnce() {
+        Recognition recognition = new Recognition();
+        Errors callback = new Errors();
+        AudioSource source = new BufferAudioSource(new short[16000], 16000, 1,
+                PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE) {
+            private int mReads;
+
+            @Override
+            public int read(short[] buffer, int offset, int len) throws IOException {
+                if (++mReads == 10) {
+                    throw new IOException("mic lost");
+                }
+                return super.read(buffer, offset, len);
+            }
+        };
+
+        recognition.start(settings(), source, callback);
+
+        assertEquals(1, callback.mErrors.size());
+        assertEquals("mic lost", callback.mErrors.get(0));
+        assertEquals(3, recognition.mClient.mCalls.size());
+        assertEquals("init", recognition.mClient.mCalls.get(0));
+        assertEquals("end", recognition.mClient.mCalls.get(1));
+        assertEquals("cancel", recognition.mClient.mCalls.get(2));
+    }
+
+    @Test
+    public void silence_endsWithNoVoice() {
+        Recognition recognition = new Recognition();
+        Errors callback = new Errors();
+        AudioSource source = new BufferAudioSource(new short[16000], 16000, 1,
+                PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE);
+        SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                .withMicActivityRate(MicLevelPublisher.DISABLED)
+                .withMaxUtteranceMs(500)
+                .withVadPreGate(true)
+                .withAdaptiveVad(true)
+                .build();
+
+        recognition.start(settings, source, callback);
+
+        assertEquals(0, callback.mErrors.size());
+        assertEquals(1, callback.mNoVoice);
+        assertEquals(3, recognition.mClient.mCalls.size());
+        assertEquals("init", recognition.mClient.mCalls.get(0));
+        assertEquals("end", recognition.mClient.mCalls.get(1));
+        assertEquals("cancel", recognition.mClient.mCalls.get(2));
+        assertEquals(3, recognition.mLog.size());
+        assertTrue(recognition.mLog.get(0).startsWith("Pipeline: SINGLE"));
+    }
+
+    @Test
+    public void armed_opensTheEncoderOnSpeech() {
+        Recognition recognition = new Recognition();
+        Errors callback = new Errors();
+        AudioSource source = new BufferAudioSource(speech(4000, 2000), 16000, 1,
+                PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE);
+        SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                .withMicActivityRate(MicLevelPublisher.DISABLED)
+                .withPreRollMs(300)
+                .withHangoverMs(500)
+                .build();
+
+        recognition.start(settings, source, callback);
+
+        assertEquals(0, callback.mErrors.size());
+        assertEquals(3, recognition.mClient.mCalls.size());
+        assertEquals("init", recognition.mClient.mCalls.get(0));
+        assertEquals("end", recognition.mClient.mCalls.get(1));
+        assertEquals("process", recognition.mClient.mCalls.get(2));
+        // Everything from the pre-roll before the speech on, but not the silence before it
+        long capturedMs = recognition.getPipeline().getFrames(AudioPipeline.Stage.CAPTURE) * 20;
+        long preRollMs = 2000 - (capturedMs - recognition.mClient.mEncoded / 16);
+        assertEquals(300, preRollMs, 20);
+    }
+
+    @Test
+    public void armed_neverOpensTheEncoderWithoutSpeech() {
+        Recognition recognition = new Recognition();
+        Errors callback = new Errors();
+        AudioSource source = new BufferAudioSource(new short[16000 * 3], 16000, 1,
+                PacedAudioSource.Pacing.AS_FAST_AS_POSSIBLE);
+        SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                .withMicActivityRate(MicLevelPublisher.DISABLED)
+                .withPreRollMs(300)
+                .build();
+
+        recognition.start(settings, source, callback);
+
+        assertEquals(0, callback.mErrors.size());
+        assertEquals(1, callback.mNoVoice);
+        assertEquals(1, recognition.mClient.mCalls.size());
+        assertEquals("cancel", recognition.mClient.mCalls.get(0));
+        assertEquals(0, recognition.mClient.mEncoded);
+    }
+}
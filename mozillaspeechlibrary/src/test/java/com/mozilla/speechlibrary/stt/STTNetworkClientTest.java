@@ -0,0 +1,417 @@
+package com.mozilla.speechlibrary.stt;
+
+import androidx.annotation.NonNull;
+
+import com.github.axet.audiolibrary.encoders.Encoder;
+import com.mozilla.speechlibrary.SpeechServiceSettings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs both upload modes against a local stand-in for the speech proxy that reads the request
+ * at the speed of a slow uplink, and compares the time from the end of speech to the last byte
+ * on the server and to the result.
+ */
+public class STTNetworkClientTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = 320; // 20 ms, like the capture loop
+    private static final int UTTERANCE_MS = 1500;
+    // About 24 kbps Opus in Ogg, one page per 60 ms frame
+    private static final int PAGE_SAMPLES = 960;
+    private static final int PAGE_BYTES = 200;
+    private static final int UPLINK_BYTES_PER_S = 6000;
+    private static final int SERVER_MS = 100;
+
+    private HttpServer mServer;
+    private volatile byte[] mReceived;
+    private volatile long mLastByteNanos;
+    private volatile String mTransferEncoding;
+    private volatile String mLanguage;
+
+    /**
+     * Writes a page of recognizable bytes into the output for every {@link #PAGE_SAMPLES}.
+     */
+    private static class PageEncoder implements Encoder {
+        private final ByteArrayOutputStream mOut;
+        private int mSamples;
+        private int mPages;
+
+        PageEncoder(ByteArrayOutputStream out) {
+            mOut = out;
+        }
+
+        @Override
+        public void encode(short[] buf, int pos, int len) {
+            mSamples += len;
+            while (mSamples >= PAGE_SAMPLES) {
+                mSamples -= PAGE_SAMPLES;
+                byte[] page = new byte[PAGE_BYTES];
+                Arrays.fill(page, (byte) mPages++);
+                mOut.write(page, 0, page.length);
+            }
+        }
+
+        @Override
+        public void close() {
+            mOut.write(0x7f);
+        }
+    }
+
+    private static class Result implements STTClientCallback {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile String mTranscription;
+        volatile String mError;
+        volatile long mNanos;
+
+        @Override
+        public void onSTTStart() {
+        }
+
+        @Override
+        public void onSTTError(@NonNull String error) {
+            mError = error;
+            mNanos = System.nanoTime();
+            mDone.countDown();
+        }
+
+        @Override
+        public void onSTTFinished(@NonNull STTResult result) {
+            mTranscription = result.mTranscription;
+            mNanos = System.nanoTime();
+            mDone.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", this::handle);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        mTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+        mLanguage = exchange.getRequestHeaders().getFirst("Accept-Language-STT");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[256];
+        long start = System.nanoTime();
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            body.write(buffer, 0, n);
+            // Not faster than the uplink
+            long due = start + body.size() * 1_000_000_000L / UPLINK_BYTES_PER_S;
+            sleepNanos(due - System.nanoTime());
+        }
+        mLastByteNanos = System.nanoTime();
+        mReceived = body.toByteArray();
+
+        sleepNanos(TimeUnit.MILLISECONDS.toNanos(SERVER_MS));
+        byte[] response = "{\"status\":\"ok\",\"data\":[{\"text\":\"hello world\",\"confidence\":\"0.9\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private STTNetworkClient client(boolean streaming, STTClientCallback callback) {
+        SpeechServiceSettings settings = new SpeechServiceSettings.Builder()
+                .withLanguage("de-DE")
+                .withStreamingUpload(streaming)
+                .build();
+        STTNetworkClient client = new STTNetworkClient(null, settings, callback) {
+            @Override
+            Encoder createEncoder(int sampleRate) {
+                return new PageEncoder(mBaos);
+            }
+        };
+        client.mEndpoint = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+        return client;
+    }
+
+    /**
+     * Feeds an utterance in real time like the capture loop.
+     *
+     * @return the end of speech, in {@link System#nanoTime()}.
+     */
+    private static long speak(STTNetworkClient client) {
+        short[] frame = new short[FRAME];
+        client.initEncoding(SAMPLE_RATE);
+        long start = System.nanoTime();
+        for (int i = 0; i < UTTERANCE_MS / 20; i++) {
+            client.encode(frame, 0, frame.length);
+            sleepNanos(start + TimeUnit.MILLISECONDS.toNanos(20 * (i + 1)) - System.nanoTime());
+        }
+        client.endEncoding();
+        return System.nanoTime();
+    }
+
+    private static byte[] expectedBody() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PageEncoder encoder = new PageEncoder(out);
+        short[] frame = new short[FRAME];
+        for (int i = 0; i < UTTERANCE_MS / 20; i++) {
+            encoder.encode(frame, 0, frame.length);
+        }
+        encoder.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return milliseconds from the end of speech to the last byte on the server and to the
+     * result.
+     */
+    private long[] run(boolean streaming) throws InterruptedException {
+        Result result = new Result();
+        STTNetworkClient client = client(streaming, result);
+        long endOfSpeech = speak(client);
+        client.process();
+
+        assertTrue(result.mDone.await(10, TimeUnit.SECONDS));
+        assertNull(result.mError);
+        assertEquals("hello world", result.mTranscription);
+        assertFalse(client.isRunning());
+        assertArrayEquals(expectedBody(), mReceived);
+        assertEquals("de-DE", mLanguage);
+
+        return new long[]{
+                TimeUnit.NANOSECONDS.toMillis(mLastByteNanos - endOfSpeech),
+                TimeUnit.NANOSECONDS.toMillis(result.mNanos - endOfSpeech)
+        };
+    }
+
+    @Test
+    public void streaming_sendsAudioBeforeEndOfSpeech() throws InterruptedException {
+        long[] buffered = run(false);
+        assertNull(mTransferEncoding);
+
+        long[] streaming = run(true);
+        assertEquals("chunked", mTransferEncoding);
+
+
+        // The buffered upload of the whole utterance takes about 800 ms at this uplink speed
+        assertTrue(buffered[0] > 500);
+        assertTrue(streaming[0] < 300);
+        assertTrue(streaming[1] + 300 < buffered[1]);
+    }
+
+    @Test
+    public void streaming_serverError() throws InterruptedException {
+        mServer.removeContext("/");
+        mServer.createContext("/", exchange -> {
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+
+        Result result = new Result();
+        STTNetworkClient client = client(true, result);
+        speak(client);
+        client.process();
+
+        assertTrue(result.mDone.await(10, TimeUnit.SECONDS));
+        assertNotNull(result.mError);
+        assertTrue(result.mError.startsWith("STT Error"));
+        assertFalse(client.isRunning());
+    }
+
+    @Test
+    public void endEncoding_withoutEncoder() {
+        Result result = new Result();
+        STTNetworkClient client = client(true, result);
+        // A session that failed before it started encoding
+        client.endEncoding();
+        client.cancel();
+
+        // Or after it had already closed the encoder
+        client = client(false, result);
+        speak(client);
+        client.endEncoding();
+        client.cancel();
+        assertEquals(1, result.mDone.getCount());
+    }
+
+    @Test
+    public void streaming_timesOut() throws InterruptedException {
+        mServer.removeContext("/");
+        mServer.createContext("/", exchange -> {
+            // Takes the audio but never answers
+            exchange.getRequestBody().close();
+            sleepNanos(TimeUnit.SECONDS.toNanos(5));
+            exchange.close();
+        });
+
+        Result result = new Result();
+        STTNetworkClient client = client(true, result);
+        client.mTimeoutMs = 300;
+        long endOfSpeech = speak(client);
+        client.process();
+
+        assertTrue(result.mDone.await(10, TimeUnit.SECONDS));
+        assertNotNull(result.mError);
+        assertTrue(result.mError.startsWith("STT Error"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(result.mNanos - endOfSpeech) < 2000);
+        assertFalse(client.isRunning());
+    }
+
+    @Test
+    public void streaming_givesUpWhenTheUploadFallsBehind() throws InterruptedException {
+        Result result = new Result();
+        STTNetworkClient client = new STTNetworkClient(null, new SpeechServiceSettings.Builder()
+                .withStreamingUpload(true)
+                .build(), result) {
+            @Override
+            Encoder createEncoder(int sampleRate) {
+                return new PageEncoder(mBaos);
+            }
+
+            @Override
+            HttpURLConnection openConnection() throws IOException {
+                // Can't connect while the user speaks, so nothing leaves the queue
+                sleepNanos(TimeUnit.SECONDS.toNanos(3));
+                return super.openConnection();
+            }
+        };
+        client.mEndpoint = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+        client.mMaxPendingBytes = 5 * PAGE_BYTES;
+
+        long start = System.nanoTime();
+        speak(client);
+        client.process();
+
+        assertTrue(result.mDone.await(10, TimeUnit.SECONDS));
+        assertEquals("STT Error: Upload fell behind", result.mError);
+        // Didn't wait for the stalled upload
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(result.mNanos - start) < UTTERANCE_MS + 500);
+        assertEquals(0, client.mBaos.size());
+        assertNull(mReceived);
+    }
+
+    @Test
+    public void streaming_reportsWhyTheUploadFailed() throws InterruptedException {
+        Result result = new Result();
+        STTNetworkClient client = new STTNetworkClient(null, new SpeechServiceSettings.Builder()
+                .withStreamingUpload(true)
+                .build(), result) {
+            @Override
+            Encoder createEncoder(int sampleRate) {
+                return new PageEncoder(mBaos);
+            }
+
+            @Override
+            HttpURLConnection openConnection() throws IOException {
+                throw new IOException("Proxy unreachable");
+            }
+        };
+        // Would fill up during the utterance if the pages kept queuing
+        client.mMaxPendingBytes = 5 * PAGE_BYTES;
+
+        speak(client);
+        client.process();
+
+        assertTrue(result.mDone.await(10, TimeUnit.SECONDS));
+        assertEquals("STT Error: Proxy unreachable", result.mError);
+        assertEquals(0, client.mBaos.size());
+    }
+
+    @Test
+    public void cancel_closesAStalledUpload() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        mServer.removeContext("/");
+        mServer.createContext("/", exchange -> {
+            // Never reads, so the client's writes block once the socket buffers are full
+            try {
+                release.await(10, TimeUnit.SECONDS);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+
+        Thread[] uploadThread = new Thread[1];
+        CountDownLatch connected = new CountDownLatch(1);
+        STTNetworkClient client = new STTNetworkClient(null, new SpeechServiceSettings.Builder()
+                .withStreamingUpload(true)
+                .build(), new Result()) {
+            @Override
+            Encoder createEncoder(int sampleRate) {
+                // 64 KB a frame, far more than the socket buffers hold
+                return new Encoder() {
+                    @Override
+                    public void encode(short[] buf, int pos, int len) {
+                        mBaos.write(new byte[64 * 1024], 0, 64 * 1024);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+
+            @Override
+            HttpURLConnection openConnection() throws IOException {
+                uploadThread[0] = Thread.currentThread();
+                connected.countDown();
+                return super.openConnection();
+            }
+        };
+        client.mEndpoint = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+        client.mMaxPendingBytes = Integer.MAX_VALUE;
+
+        try {
+            short[] frame = new short[FRAME];
+            client.initEncoding(SAMPLE_RATE);
+            for (int i = 0; i < 200; i++) {
+                client.encode(frame, 0, frame.length);
+            }
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            // Let the upload get stuck in a write
+            sleepNanos(TimeUnit.MILLISECONDS.toNanos(500));
+            assertEquals(Thread.State.RUNNABLE, uploadThread[0].getState());
+
+            client.cancel();
+            uploadThread[0].join(2000);
+            assertFalse(uploadThread[0].isAlive());
+
+        } finally {
+            release.countDown();
+        }
+    }
+}
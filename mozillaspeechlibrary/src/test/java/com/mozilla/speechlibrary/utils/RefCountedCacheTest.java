@@ -0,0 +1,184 @@
+package com.mozilla.speechlibrary.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RefCountedCacheTest {
+
+    /**
+     * Stands in for a model, loading takes a while and releasing is recorded.
+     */
+    private static class Models {
+        final AtomicInteger mLoads = new AtomicInteger();
+        final List<String> mReleased = new CopyOnWriteArrayList<>();
+        volatile long mLoadMs;
+        volatile boolean mFail;
+
+        RefCountedCache<String, String> cache(long idleTimeoutMs) {
+            return new RefCountedCache<>(key -> {
+                Thread.sleep(mLoadMs);
+                if (mFail) {
+                    throw new IOException("no model");
+                }
+                return key + "#" + mLoads.incrementAndGet();
+            }, mReleased::add, idleTimeoutMs);
+        }
+    }
+
+    @Test
+    public void leases_shareOneLoad() throws Exception {
+        Models models = new Models();
+        RefCountedCache<String, String> cache = models.cache(RefCountedCache.NEVER);
+
+        RefCountedCache<String, String>.Lease first = cache.acquire("en");
+        RefCountedCache<String, String>.Lease second = cache.acquire("en");
+        RefCountedCache<String, String>.Lease other = cache.acquire("de");
+
+        assertEquals("en#1", first.get());
+        assertSame(first.get(), second.get());
+        assertEquals("de#2", other.get());
+        assertEquals(2, cache.getLoads());
+
+        first.close();
+        first.close();
+        second.close();
+        other.close();
+        assertTrue(models.mReleased.isEmpty());
+
+        // Still loaded for the next session
+        assertEquals("en#1", cache.acquire("en").get());
+        assertEquals(2, models.mLoads.get());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentAcquires_loadOnce() throws Exception {
+        Models models = new Models();
+        models.mLoadMs = 100;
+        RefCountedCache<String, String> cache = models.cache(RefCountedCache.NEVER);
+
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> values = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            new Thread(() -> {
+                try {
+                    values.add(cache.acquire("en").get());
+
+                } catch (Exception ignored) {
+
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertEquals(4, values.size());
+        for (String value : values) {
+            assertEquals("en#1", value);
+        }
+        assertEquals(1, models.mLoads.get());
+    }
+
+    @Test(timeout = 10000)
+    public void idleTimeout_releases() throws Exception {
+        Models models = new Models();
+        RefCountedCache<String, String> cache = models.cache(200);
+
+        cache.acquire("en").close();
+        // Used again before the timeout, which starts over
+        Thread.sleep(100);
+        RefCountedCache<String, String>.Lease lease = cache.acquire("en");
+        Thread.sleep(300);
+        assertTrue(models.mReleased.isEmpty());
+        lease.close();
+
+        assertTrue(cache.contains("en"));
+        Thread.sleep(500);
+        assertFalse(cache.contains("en"));
+        assertEquals(0, cache.size());
+        assertEquals(1, models.mReleased.size());
+        assertEquals("en#1", models.mReleased.get(0));
+
+        assertEquals("en#2", cache.acquire("en").get());
+    }
+
+    @Test
+    public void zeroTimeout_releasesWithLastLease() throws Exception {
+        Models models = new Models();
+        RefCountedCache<String, String> cache = models.cache(0);
+
+        RefCountedCache<String, String>.Lease first = cache.acquire("en");
+        RefCountedCache<String, String>.Lease second = cache.acquire("en");
+        first.close();
+        assertTrue(models.mReleased.isEmpty());
+        second.close();
+        assertEquals(1, models.mReleased.size());
+        assertFalse(cache.contains("en"));
+    }
+
+    @Test
+    public void trim_waitsForLeases() throws Exception {
+        Models models = new Models();
+        RefCountedCache<String, String> cache = models.cache(RefCountedCache.NEVER);
+
+        cache.acquire("de").close();
+        RefCountedCache<String, String>.Lease lease = cache.acquire("en");
+
+        assertEquals(1, cache.trim());
+        assertEquals(1, models.mReleased.size());
+        assertEquals("de#1", models.mReleased.get(0));
+        // In use, so released when it's given back
+        assertEquals("en#2", lease.get());
+        lease.close();
+        assertEquals(2, models.mReleased.size());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loadError_reachesTheCaller() throws Exception {
+        Models models = new Models();
+        models.mFail = true;
+        RefCountedCache<String, String> cache = models.cache(RefCountedCache.NEVER);
+
+        try {
+            cache.acquire("en");
+            fail();
+
+        } catch (IOException e) {
+            assertEquals("no model", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+
+        models.mFail = false;
+        assertEquals("en#1", cache.acquire("en").get());
+    }
+
+    @Test(timeout = 10000)
+    public void freshAcquire_costsNothing() throws Exception {
+        Models models = new Models();
+        models.mLoadMs = 300;
+        RefCountedCache<String, String> cache = models.cache(RefCountedCache.NEVER);
+
+        long start = System.nanoTime();
+        cache.acquire("en").close();
+        long firstMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            cache.acquire("en").close();
+        }
+        long nextMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(firstMs >= 300);
+        assertTrue(nextMs < 100);
+        assertEquals(1, models.mLoads.get());
+    }
+}